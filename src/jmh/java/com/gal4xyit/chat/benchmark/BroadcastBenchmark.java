@@ -0,0 +1,134 @@
+package com.gal4xyit.chat.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.gal4xyit.chat.chat.ChatBroadcaster;
+import com.gal4xyit.chat.chat.ChatMessage;
+import com.gal4xyit.chat.chat.ChatRooms;
+import com.gal4xyit.chat.chat.MessageType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Fan-out through the simple broker, each frame STOMP-encoded the way StompSubProtocolHandler does before it reaches the
+ * socket. roomMessage is the room path: one convertAndSend to a topic with N subscribers, where the broker already
+ * shares the encoded payload array between them. The direct benchmarks send one message to the recipient's and the
+ * sender's user destinations, once through ChatBroadcaster (encoded once) and once as two convertAndSendToUser calls
+ * (encoded per destination), the path direct messages would otherwise take. Run with the gc profiler (on by default
+ * in the jmh profile) and compare gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    private static final String ROOM = "public";
+    private static final List<String> PARTICIPANTS = List.of("bob", "alice");
+
+    @Param({"1", "100", "1000"})
+    public int subscribers;
+
+    private SimpleBrokerMessageHandler broker;
+    private SimpMessagingTemplate messagingTemplate;
+    private ChatBroadcaster chatBroadcaster;
+    private ChatMessage message;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        StompEncoder encoder = new StompEncoder();
+        ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        clientOutbound.subscribe(frame -> this.blackhole.consume(encode(encoder, frame)));
+
+        broker = new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/topic", "/user"));
+        broker.start();
+        for (int i = 0; i < subscribers; i++) {
+            subscribe("session-" + i, ChatRooms.messageTopic(ROOM));
+        }
+        // What UserDestinationMessageHandler would resolve /user/{name}/queue/direct to, without the user registry.
+        subscribe("session-recipient", "/user/bob" + ChatRooms.DIRECT_QUEUE);
+        subscribe("session-sender", "/user/alice" + ChatRooms.DIRECT_QUEUE);
+
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        messagingTemplate = new SimpMessagingTemplate(brokerChannel);
+        messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter(objectMapper));
+        chatBroadcaster = new ChatBroadcaster(messagingTemplate, new SimpleMeterRegistry());
+        message = ChatMessage.builder()
+                .id(7_213_456_789_012_345_678L)
+                .room(ROOM)
+                .sender("alice")
+                .content("The quick brown fox jumps over the lazy dog, then asks whether anyone has seen the build logs.")
+                .type(MessageType.CHAT)
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        broker.stop();
+    }
+
+    @Benchmark
+    public void roomMessage() {
+        messagingTemplate.convertAndSend(ChatRooms.messageTopic(ROOM), message);
+    }
+
+    @Benchmark
+    public void directSharedPayload() {
+        chatBroadcaster.toUsers(PARTICIPANTS, ChatRooms.DIRECT_QUEUE, message);
+    }
+
+    @Benchmark
+    public void directConvertAndSendToUser() {
+        for (String user : PARTICIPANTS) {
+            messagingTemplate.convertAndSendToUser(user, ChatRooms.DIRECT_QUEUE, message);
+        }
+    }
+
+    private void subscribe(String sessionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(destination);
+        accessor.setDestination(destination);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    private static byte[] encode(StompEncoder encoder, Message<?> frame) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(frame);
+        accessor.updateStompCommandAsServerMessage();
+        return encoder.encode(accessor.getMessageHeaders(), (byte[]) frame.getPayload());
+    }
+}
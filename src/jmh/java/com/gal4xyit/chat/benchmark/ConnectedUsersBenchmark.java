@@ -0,0 +1,76 @@
+package com.gal4xyit.chat.benchmark;
+
+import com.gal4xyit.chat.chat.ConnectedUsersService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Connect/disconnect churn from several threads while others read the roster, as the presence paths do.
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectedUsersBenchmark {
+
+    private static final String ROOM = "public";
+
+    @Param({"100", "10000"})
+    public int onlineUsers;
+
+    private ConnectedUsersService connectedUsersService;
+    private final AtomicInteger threadIds = new AtomicInteger();
+
+    @Setup
+    public void setUp() {
+        connectedUsersService = new ConnectedUsersService();
+        for (int i = 0; i < onlineUsers; i++) {
+            connectedUsersService.addUserSession(ROOM, "user-" + i, "session-" + i);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Churner {
+        private String sessionPrefix;
+
+        @Setup
+        public void setUp(ConnectedUsersBenchmark benchmark) {
+            sessionPrefix = "churn-" + benchmark.threadIds.incrementAndGet() + "-";
+        }
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(4)
+    public boolean addRemove(Churner churner) {
+        // Half the time a user who is already online opens a second tab, so both roster paths are exercised.
+        int user = ThreadLocalRandom.current().nextInt(onlineUsers * 2);
+        String username = "user-" + user;
+        String sessionId = churner.sessionPrefix + user;
+        connectedUsersService.addUserSession(ROOM, username, sessionId);
+        return connectedUsersService.removeUserSession(ROOM, username, sessionId);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(4)
+    public Set<String> getConnectedUsers() {
+        return connectedUsersService.getConnectedUsers(ROOM);
+    }
+}
@@ -0,0 +1,106 @@
+package com.gal4xyit.chat.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.gal4xyit.chat.chat.ChatMessageRepository;
+import com.gal4xyit.chat.chat.ChatMessageView;
+import com.gal4xyit.chat.chat.EncodedHistoryPage;
+import com.gal4xyit.chat.chat.MessageHistoryPage;
+import com.gal4xyit.chat.chat.MessageHistoryService;
+import com.gal4xyit.chat.chat.MessageType;
+import com.gal4xyit.chat.chat.RecentMessageCache;
+import com.gal4xyit.chat.config.ChatProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// History responses built from the ring buffer and from (pre-fetched) repository rows, without a database in the loop.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+
+    private static final String ROOM = "public";
+
+    @Param({"100", "1000", "10000"})
+    public int messages;
+
+    private List<ChatMessageView> newestFirst;
+    private MessageHistoryService cachedHistory;
+    private MessageHistoryService uncachedHistory;
+
+    @Setup
+    public void setUp() {
+        newestFirst = new ArrayList<>(messages + 1);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = messages; i >= 0; i--) {
+            newestFirst.add(new ChatMessageView(1_000_000L + i, "user-" + (i % 50),
+                    "message number " + i + " with a little bit of text to make it realistic", MessageType.CHAT,
+                    now.minusSeconds(messages - i)));
+        }
+        ChatMessageRepository repository = repositoryReturning(newestFirst);
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        ChatProperties cached = new ChatProperties();
+        cached.getHistory().setCacheCapacity(messages + 1);
+        RecentMessageCache warmCache = new RecentMessageCache(repository, cached, new SimpleMeterRegistry());
+        warmCache.afterSingletonsInstantiated();
+        cachedHistory = new MessageHistoryService(repository, warmCache, objectMapper, new SimpleMeterRegistry());
+
+        ChatProperties uncached = new ChatProperties();
+        uncached.getHistory().setCacheCapacity(0);
+        RecentMessageCache noCache = new RecentMessageCache(repository, uncached, new SimpleMeterRegistry());
+        uncachedHistory = new MessageHistoryService(repository, noCache, objectMapper, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public MessageHistoryPage pageFromRows() {
+        return MessageHistoryPage.fromNewestFirst(newestFirst, messages);
+    }
+
+    @Benchmark
+    public EncodedHistoryPage encodedFromRingBuffer() {
+        // An explicit cursor skips the per-version snapshot, so every call pages and encodes.
+        return cachedHistory.encodedPage(ROOM, Long.MAX_VALUE, messages);
+    }
+
+    @Benchmark
+    public EncodedHistoryPage encodedFromRepository() {
+        return uncachedHistory.encodedPage(ROOM, Long.MAX_VALUE, messages);
+    }
+
+    @Benchmark
+    public EncodedHistoryPage latestSnapshot() {
+        return cachedHistory.encodedPage(ROOM, null, messages);
+    }
+
+    private static ChatMessageRepository repositoryReturning(List<ChatMessageView> rows) {
+        return (ChatMessageRepository) Proxy.newProxyInstance(HistoryBenchmark.class.getClassLoader(),
+                new Class<?>[]{ChatMessageRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findViewsBefore", "findDirectViewsBefore" -> rows;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "ChatMessageRepository(benchmark)";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,85 @@
+package com.gal4xyit.chat.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.gal4xyit.chat.chat.ChatMessage;
+import com.gal4xyit.chat.chat.MessageType;
+import com.gal4xyit.chat.chat.PresenceSnapshot;
+import com.gal4xyit.chat.chat.PresenceUpdate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Presence left ChatMessage for its own records, so the "large user list" case is the snapshot a subscriber receives.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ChatMessage message;
+
+    @State(Scope.Benchmark)
+    public static class Roster {
+        @Param({"0", "100", "10000"})
+        public int users;
+
+        private PresenceSnapshot snapshot;
+        private PresenceUpdate update;
+
+        @Setup
+        public void setUp() {
+            List<String> roster = new ArrayList<>(users);
+            for (int i = 0; i < users; i++) {
+                roster.add("user-" + i);
+            }
+            snapshot = new PresenceSnapshot("public", 42, roster);
+            update = new PresenceUpdate("public", 43, roster, List.of());
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        message = ChatMessage.builder()
+                .id(7_213_456_789_012_345_678L)
+                .room("public")
+                .sender("alice")
+                .content("The quick brown fox jumps over the lazy dog, then asks whether anyone has seen the build logs.")
+                .type(MessageType.CHAT)
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    @Benchmark
+    public byte[] chatMessage() throws Exception {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] presenceSnapshot(Roster roster) throws Exception {
+        return objectMapper.writeValueAsBytes(roster.snapshot);
+    }
+
+    @Benchmark
+    public byte[] presenceUpdate(Roster roster) throws Exception {
+        return objectMapper.writeValueAsBytes(roster.update);
+    }
+}
@@ -0,0 +1,281 @@
+package com.gal4xyit.chat.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gal4xyit.chat.ChatApplication;
+import com.gal4xyit.chat.chat.ChatMessage;
+import com.gal4xyit.chat.chat.ChatRooms;
+import com.gal4xyit.chat.chat.MessageType;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.File;
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts the application on H2 (PostgreSQL mode) with a stubbed token issuer, then drives it with a swarm of
+ * in-process STOMP clients. Every chat message carries its send time, so the delivery latency of each fan-out copy
+ * is measured on the same clock.
+ * <p>
+ * Options, with or without a leading {@code --} (all optional): {@code clients=200 rooms=4 rate=1 churn=0.05
+ * warmup=5s duration=30s rate-limit=false output=target/loadtest-result.json}
+ */
+@Slf4j
+public class ChatLoadTest {
+
+    private static final String CONTENT_PREFIX = "lt ";
+
+    private final Options options;
+    private final Histogram latencyMicros = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong churned = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile long measureFromNanos = Long.MAX_VALUE;
+    private volatile long measureUntilNanos = Long.MAX_VALUE;
+
+    ChatLoadTest(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        log.info("Load test options: {}", options);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ChatApplication.class, LoadTestConfiguration.class)
+                .profiles("test")
+                // Passed as arguments rather than default properties so they win over application.yml.
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:loadtest;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.show-sql=false",
+                        "--chat.rate-limit.enabled=" + options.rateLimit(),
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.gal4xyit.chat.loadtest=INFO");
+        int exitCode = 0;
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+            Report report = new ChatLoadTest(options).run(port, objectMapper);
+            report.print();
+            File output = new File(options.output());
+            if (output.getParentFile() != null) {
+                output.getParentFile().mkdirs();
+            }
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(output, report);
+            log.info("Load test report written to {}", output.getAbsolutePath());
+        } catch (Exception e) {
+            log.error("Load test failed", e);
+            exitCode = 1;
+        } finally {
+            context.close();
+        }
+        System.exit(exitCode);
+    }
+
+    Report run(int port, ObjectMapper objectMapper) throws Exception {
+        ThreadPoolTaskScheduler heartbeats = new ThreadPoolTaskScheduler();
+        heartbeats.setPoolSize(2);
+        heartbeats.setThreadNamePrefix("loadtest-heartbeat-");
+        heartbeats.initialize();
+        WebSocketStompClient stompClient = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+        stompClient.setMessageConverter(converter);
+        stompClient.setTaskScheduler(heartbeats);
+
+        String url = "ws://localhost:" + port + "/ws";
+        List<Client> clients = new ArrayList<>(options.clients());
+        List<CompletableFuture<StompSession>> connecting = new ArrayList<>(options.clients());
+        for (int i = 0; i < options.clients(); i++) {
+            Client client = new Client("loadtest-user-" + i, "room-" + (i % options.rooms()));
+            clients.add(client);
+            WebSocketHttpHeaders handshakeHeaders = new WebSocketHttpHeaders();
+            handshakeHeaders.setBearerAuth(LoadTestConfiguration.tokenFor(client.username));
+            connecting.add(stompClient.connectAsync(url, handshakeHeaders, new StompHeaders(), client));
+        }
+        CompletableFuture.allOf(connecting.toArray(CompletableFuture[]::new)).get(2, TimeUnit.MINUTES);
+        log.info("{} STOMP sessions connected across {} rooms", clients.size(), options.rooms());
+
+        ScheduledExecutorService senders = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.rate());
+        for (Client client : clients) {
+            long initialDelay = ThreadLocalRandom.current().nextLong(periodNanos);
+            senders.scheduleAtFixedRate(client::tick, initialDelay, periodNanos, TimeUnit.NANOSECONDS);
+        }
+
+        Thread.sleep(options.warmup().toMillis());
+        latencyMicros.reset();
+        long sentBefore = sent.get();
+        long deliveredBefore = delivered.get();
+        long churnedBefore = churned.get();
+        measureFromNanos = System.nanoTime();
+        log.info("Warm-up done, measuring for {}", options.duration());
+
+        Thread.sleep(options.duration().toMillis());
+        measureUntilNanos = System.nanoTime();
+        long sentInWindow = sent.get() - sentBefore;
+        long deliveredInWindow = delivered.get() - deliveredBefore;
+        long churnedInWindow = churned.get() - churnedBefore;
+
+        senders.shutdownNow();
+        senders.awaitTermination(10, TimeUnit.SECONDS);
+        for (Client client : clients) {
+            if (client.session != null && client.session.isConnected()) {
+                client.session.disconnect();
+            }
+        }
+        stompClient.stop();
+        heartbeats.shutdown();
+
+        double seconds = (measureUntilNanos - measureFromNanos) / 1e9;
+        return new Report(options, sentInWindow, deliveredInWindow, churnedInWindow, errors.get(),
+                sentInWindow / seconds, deliveredInWindow / seconds,
+                latencyMicros.getValueAtPercentile(50) / 1000.0,
+                latencyMicros.getValueAtPercentile(99) / 1000.0,
+                latencyMicros.getValueAtPercentile(99.9) / 1000.0,
+                latencyMicros.getMaxValue() / 1000.0);
+    }
+
+    private final class Client extends StompSessionHandlerAdapter implements StompFrameHandler {
+        private final String username;
+        private final String room;
+        private volatile StompSession session;
+
+        private Client(String username, String room) {
+            this.username = username;
+            this.room = room;
+        }
+
+        @Override
+        public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+            this.session = session;
+            session.subscribe(ChatRooms.messageTopic(room), this);
+            session.send("/app/chat.addUser/" + room, ChatMessage.builder().type(MessageType.JOIN).build());
+        }
+
+        void tick() {
+            StompSession current = session;
+            if (current == null || !current.isConnected()) {
+                return;
+            }
+            try {
+                if (ThreadLocalRandom.current().nextDouble() < options.churn()) {
+                    current.send("/app/chat.leaveRoom/" + room, ChatMessage.builder().type(MessageType.LEAVE).build());
+                    current.send("/app/chat.addUser/" + room, ChatMessage.builder().type(MessageType.JOIN).build());
+                    churned.incrementAndGet();
+                } else {
+                    current.send("/app/chat.sendMessage/" + room, ChatMessage.builder()
+                            .type(MessageType.CHAT)
+                            .content(CONTENT_PREFIX + System.nanoTime())
+                            .build());
+                    sent.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+            }
+        }
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return ChatMessage.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            long receivedNanos = System.nanoTime();
+            if (!(payload instanceof ChatMessage message) || message.getContent() == null
+                    || !message.getContent().startsWith(CONTENT_PREFIX)) {
+                return;
+            }
+            long sentNanos = Long.parseLong(message.getContent().substring(CONTENT_PREFIX.length()));
+            delivered.incrementAndGet();
+            if (sentNanos >= measureFromNanos && receivedNanos <= measureUntilNanos) {
+                latencyMicros.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(receivedNanos - sentNanos),
+                        latencyMicros.getHighestTrackableValue()));
+            }
+        }
+
+        @Override
+        public void handleException(StompSession session, StompCommand command, StompHeaders headers, byte[] payload, Throwable exception) {
+            errors.incrementAndGet();
+            log.warn("STOMP error for {}: {}", username, exception.getMessage());
+        }
+
+        @Override
+        public void handleTransportError(StompSession session, Throwable exception) {
+            errors.incrementAndGet();
+            log.warn("Transport error for {}: {}", username, exception.getMessage());
+        }
+    }
+
+    record Options(int clients, int rooms, double rate, double churn, Duration warmup, Duration duration,
+                   boolean rateLimit, String output) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                // The Maven profile passes everything as one argument, so split it here as well.
+                for (String option : arg.trim().split("\\s+")) {
+                    String trimmed = option.startsWith("--") ? option.substring(2) : option;
+                    int separator = trimmed.indexOf('=');
+                    if (separator > 0) {
+                        values.put(trimmed.substring(0, separator), trimmed.substring(separator + 1));
+                    }
+                }
+            }
+            return new Options(
+                    Integer.parseInt(values.getOrDefault("clients", "200")),
+                    Integer.parseInt(values.getOrDefault("rooms", "4")),
+                    Double.parseDouble(values.getOrDefault("rate", "1")),
+                    Double.parseDouble(values.getOrDefault("churn", "0.05")),
+                    DurationStyle.detectAndParse(values.getOrDefault("warmup", "5s")),
+                    DurationStyle.detectAndParse(values.getOrDefault("duration", "30s")),
+                    Boolean.parseBoolean(values.getOrDefault("rate-limit", "false")),
+                    values.getOrDefault("output", "target/loadtest-result.json"));
+        }
+    }
+
+    record Report(Options options, long sent, long delivered, long churned, long errors,
+                  double sentPerSecond, double deliveredPerSecond,
+                  double p50Millis, double p99Millis, double p999Millis, double maxMillis) {
+
+        void print() {
+            System.out.printf("%nclients=%d rooms=%d rate=%.2f/s churn=%.2f duration=%s%n",
+                    options.clients(), options.rooms(), options.rate(), options.churn(), options.duration());
+            System.out.printf("sent       %10d  (%.1f/s)%n", sent, sentPerSecond);
+            System.out.printf("delivered  %10d  (%.1f/s)%n", delivered, deliveredPerSecond);
+            System.out.printf("churned    %10d%n", churned);
+            System.out.printf("errors     %10d%n", errors);
+            System.out.printf("latency ms p50=%.2f p99=%.2f p99.9=%.2f max=%.2f%n%n",
+                    p50Millis, p99Millis, p999Millis, maxMillis);
+        }
+    }
+}
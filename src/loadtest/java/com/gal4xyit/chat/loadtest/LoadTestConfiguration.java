@@ -0,0 +1,53 @@
+package com.gal4xyit.chat.loadtest;
+
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Instant;
+
+// Stands in for Keycloak: bearer tokens are "loadtest.<username>" and are accepted without a signature.
+@TestConfiguration(proxyBeanMethods = false)
+class LoadTestConfiguration {
+
+    static final String TOKEN_PREFIX = "loadtest.";
+
+    static String tokenFor(String username) {
+        return TOKEN_PREFIX + username;
+    }
+
+    @Bean
+    JwtDecoder jwtDecoder() {
+        return token -> {
+            if (!token.startsWith(TOKEN_PREFIX)) {
+                throw new BadJwtException("Not a load-test token");
+            }
+            String username = token.substring(TOKEN_PREFIX.length());
+            Instant now = Instant.now();
+            return Jwt.withTokenValue(token)
+                    .header("alg", "none")
+                    .subject(username)
+                    .claim("preferred_username", username)
+                    .issuedAt(now)
+                    .expiresAt(now.plusSeconds(3600))
+                    .build();
+        };
+    }
+
+    @Bean
+    ClientRegistrationRepository clientRegistrationRepository() {
+        return new InMemoryClientRegistrationRepository(ClientRegistration.withRegistrationId("keycloak")
+                .clientId("loadtest")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+                .authorizationUri("http://localhost/auth")
+                .tokenUri("http://localhost/token")
+                .build());
+    }
+}
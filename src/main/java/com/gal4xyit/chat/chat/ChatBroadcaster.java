@@ -0,0 +1,57 @@
+package com.gal4xyit.chat.chat;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+
+/**
+ * Encodes a payload once with the template's converter and sends that message to every destination of the call. Only
+ * worth it for several destinations: for a single topic convertAndSend also encodes once, and the broker passes the same
+ * payload array to each subscriber either way (see BroadcastBenchmark).
+ */
+@Component
+public class ChatBroadcaster {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final DistributionSummary payloadSize;
+
+    public ChatBroadcaster(SimpMessagingTemplate messagingTemplate, MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.payloadSize = DistributionSummary.builder("chat.broadcast.payload.size")
+                .baseUnit("bytes")
+                .description("Size of broadcast payloads, encoded once per fan-out")
+                .register(meterRegistry);
+    }
+
+    public void toUsers(Collection<String> users, String destination, Object payload) {
+        Message<?> encoded = encode(payload);
+        for (String user : users) {
+            messagingTemplate.send(userDestination(user, destination), encoded);
+        }
+    }
+
+    // Immutable headers make the template copy them per send, so the destination set there never leaks between sends.
+    Message<?> encode(Object payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        Message<?> encoded = messagingTemplate.getMessageConverter().toMessage(payload, accessor.getMessageHeaders());
+        if (encoded == null || !(encoded.getPayload() instanceof byte[] bytes)) {
+            throw new MessageConversionException("Unable to encode " + payload.getClass().getName() + " for broadcast");
+        }
+        payloadSize.record(bytes.length);
+        return encoded;
+    }
+
+    // Same mapping as SimpMessagingTemplate#convertAndSendToUser.
+    private String userDestination(String user, String destination) {
+        return messagingTemplate.getUserDestinationPrefix() + StringUtils.replace(user, "/", "%2F")
+                + (destination.startsWith("/") ? destination : "/" + destination);
+    }
+}
@@ -1,110 +1,148 @@
 package com.gal4xyit.chat.chat;
 
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.StringUtils;
 
-import java.security.Principal;
-import java.util.ArrayList;
+import java.util.List;
 
+@Slf4j
 @Controller
 @RequiredArgsConstructor
 public class ChatController {
 
     private final ConnectedUsersService connectedUsersService;
     private final SimpMessagingTemplate messagingTemplate;
-    private final ChatMessageRepository chatMessageRepository;
+    private final ChatBroadcaster chatBroadcaster;
+    private final ChatMessageWriteBehind chatMessageWriteBehind;
+    private final RecentMessageCache recentMessageCache;
+    private final PresenceAggregator presenceAggregator;
+    private final ChatMetrics chatMetrics;
 
-    @MessageMapping("/chat.sendMessage")
+    @MessageMapping("/chat.sendMessage/{room}")
     public void sendMessage(
+            @DestinationVariable String room,
             @Payload ChatMessage chatMessage,
             SimpMessageHeaderAccessor headerAccessor
     ){
-        Principal principal = headerAccessor.getUser();
-
-        if (principal == null) {
-            System.err.println("sendMessage called without authenticated principal in WebSocket session!");
+        SessionIdentity identity = identityOf(headerAccessor, "sendMessage");
+        if (identity == null) {
             return;
         }
 
-        String authenticatedUsername = null;
-        if (principal instanceof OAuth2User) {
-            OAuth2User oauth2User = (OAuth2User) principal;
-            authenticatedUsername = oauth2User.getAttribute("preferred_username");
-            if (!StringUtils.hasText(authenticatedUsername)) {
-                authenticatedUsername = oauth2User.getName();
-            }
-        } else {
-            authenticatedUsername = principal.getName();
-        }
-
-        if (!StringUtils.hasText(authenticatedUsername)) {
-            System.err.println("Could not determine username from principal for sendMessage.");
+        if (!ChatRooms.joinedRooms(headerAccessor.getSessionAttributes()).contains(room)) {
+            log.warn("sendMessage to room {} from session {} that has not joined it", room, headerAccessor.getSessionId());
             return;
         }
 
-        chatMessage.setSender(authenticatedUsername);
-
         if (chatMessage.getType() == MessageType.CHAT) {
             if (!StringUtils.hasText(chatMessage.getContent())) {
                 return;
             }
-            ChatMessage savedMessage = chatMessageRepository.save(chatMessage);
-            messagingTemplate.convertAndSend("/topic/public", savedMessage);
+            Timer.Sample sample = chatMetrics.startSend();
+            ChatMessage acceptedMessage = chatMetrics.persist(ChatMetrics.ROOM).record(() ->
+                    chatMessageWriteBehind.enqueue(ChatMessage.builder()
+                            .room(room)
+                            .sender(identity.username())
+                            .content(chatMessage.getContent())
+                            .type(MessageType.CHAT)
+                            .build()));
+            recentMessageCache.append(acceptedMessage);
+            chatMetrics.broadcast(ChatMetrics.ROOM).record(() ->
+                    messagingTemplate.convertAndSend(ChatRooms.messageTopic(room), acceptedMessage));
+            chatMetrics.stopSend(sample, ChatMetrics.ROOM);
+            chatMetrics.messageAccepted(MessageType.CHAT);
         }
     }
 
-    @MessageMapping("/chat.addUser")
-    public void addUser(
-            @Payload ChatMessage joinRequestPayload,
+    @MessageMapping("/chat.sendDirect/{recipient}")
+    public void sendDirectMessage(
+            @DestinationVariable String recipient,
+            @Payload ChatMessage chatMessage,
             SimpMessageHeaderAccessor headerAccessor
     ){
-        Principal principal = headerAccessor.getUser();
-        if (principal == null) {
-            System.err.println("addUser called without authenticated principal in WebSocket session!");
+        SessionIdentity identity = identityOf(headerAccessor, "sendDirectMessage");
+        if (identity == null) {
             return;
         }
 
-        String authenticatedUsername = null;
-        if (principal instanceof OAuth2User) {
-            OAuth2User oauth2User = (OAuth2User) principal;
-            authenticatedUsername = oauth2User.getAttribute("preferred_username");
-            if (!StringUtils.hasText(authenticatedUsername)) {
-                authenticatedUsername = oauth2User.getName();
-            }
-        } else {
-            authenticatedUsername = principal.getName();
+        if (!StringUtils.hasText(recipient) || recipient.length() > 255 || !StringUtils.hasText(chatMessage.getContent())) {
+            return;
+        }
+
+        String sender = identity.username();
+        Timer.Sample sample = chatMetrics.startSend();
+        ChatMessage acceptedMessage = chatMetrics.persist(ChatMetrics.DIRECT).record(() ->
+                chatMessageWriteBehind.enqueue(ChatMessage.builder()
+                        .room(ChatRooms.DIRECT)
+                        .sender(sender)
+                        .recipient(recipient)
+                        .content(chatMessage.getContent())
+                        .type(MessageType.CHAT)
+                        .build()));
+        // Resolved through the user registry to the recipient's own sessions, plus the sender's other tabs. Two
+        // destinations, so the payload is encoded once for both rather than once per convertAndSendToUser.
+        List<String> participants = recipient.equals(sender) ? List.of(recipient) : List.of(recipient, sender);
+        chatMetrics.broadcast(ChatMetrics.DIRECT).record(() ->
+                chatBroadcaster.toUsers(participants, ChatRooms.DIRECT_QUEUE, acceptedMessage));
+        chatMetrics.stopSend(sample, ChatMetrics.DIRECT);
+        chatMetrics.messageAccepted(MessageType.CHAT);
+    }
+
+    @MessageMapping("/chat.addUser/{room}")
+    public void addUser(
+            @DestinationVariable String room,
+            @Payload ChatMessage joinRequestPayload,
+            SimpMessageHeaderAccessor headerAccessor
+    ){
+        SessionIdentity identity = identityOf(headerAccessor, "addUser");
+        String sessionId = headerAccessor.getSessionId();
+        if (identity == null || sessionId == null) {
+            return;
         }
 
-        if (!StringUtils.hasText(authenticatedUsername)) {
-            System.err.println("Could not determine username from principal for addUser.");
+        if (!ChatRooms.isValid(room)) {
+            log.warn("addUser called with invalid room name: {}", room);
             return;
         }
 
-        String sessionId = headerAccessor.getSessionId();
-        if (sessionId == null) { return; }
+        ChatRooms.joinedRooms(headerAccessor.getSessionAttributes()).add(room);
 
-        headerAccessor.getSessionAttributes().put("username", authenticatedUsername);
+        if (connectedUsersService.addUserSession(room, identity.username(), sessionId)) {
+            presenceAggregator.userJoined(room, identity.username());
+            chatMetrics.messageAccepted(MessageType.JOIN);
+        }
+    }
 
-        boolean shouldBroadcastPublicJoinEvent = connectedUsersService.addUserSession(authenticatedUsername, sessionId);
+    @MessageMapping("/chat.leaveRoom/{room}")
+    public void leaveRoom(
+            @DestinationVariable String room,
+            SimpMessageHeaderAccessor headerAccessor
+    ){
+        SessionIdentity identity = identityOf(headerAccessor, "leaveRoom");
+        String sessionId = headerAccessor.getSessionId();
+        if (identity == null || sessionId == null || !ChatRooms.joinedRooms(headerAccessor.getSessionAttributes()).remove(room)) {
+            return;
+        }
 
-        ChatMessage broadcastMessage = ChatMessage.builder()
-                .sender(authenticatedUsername)
-                .type(MessageType.JOIN)
-                .connectedUsers(new ArrayList<>(connectedUsersService.getConnectedUsers()))
-                .build();
+        if (connectedUsersService.removeUserSession(room, identity.username(), sessionId)) {
+            presenceAggregator.userLeft(room, identity.username());
+            chatMetrics.messageAccepted(MessageType.LEAVE);
+        }
+    }
 
-        if (shouldBroadcastPublicJoinEvent) {
-            broadcastMessage.setContent(authenticatedUsername + " joined!");
-            chatMessageRepository.save(broadcastMessage);
-        } else {
-            broadcastMessage.setContent(null);
+    private static SessionIdentity identityOf(SimpMessageHeaderAccessor headerAccessor, String handler) {
+        SessionIdentity identity = SessionIdentity.of(headerAccessor);
+        if (identity == null) {
+            log.warn("{} called without an authenticated user on WebSocket session {}", handler, headerAccessor.getSessionId());
         }
-        messagingTemplate.convertAndSend("/topic/public", broadcastMessage);
+        return identity;
     }
-}
\ No newline at end of file
+}
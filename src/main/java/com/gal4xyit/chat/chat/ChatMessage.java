@@ -1,31 +1,44 @@
 package com.gal4xyit.chat.chat;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 
 import java.time.LocalDateTime;
-import java.util.List;
-
 @Getter
 @Setter
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages", indexes = {
+        @Index(name = "idx_chat_messages_room_id", columnList = "room, id"),
+        @Index(name = "idx_chat_messages_direct", columnList = "sender, recipient, id"),
+        @Index(name = "idx_chat_messages_timestamp_id", columnList = "timestamp desc, id desc")
+})
 public class ChatMessage {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @MessageId
+    @JsonSerialize(using = ToStringSerializer.class)
     private Long id;
 
+    @Builder.Default
+    @ColumnDefault("'" + ChatRooms.DEFAULT_ROOM + "'")
+    @Column(nullable = false, length = 64)
+    private String room = ChatRooms.DEFAULT_ROOM;
+
     @Column(columnDefinition = "TEXT")
     private String content;
 
     @Column(nullable = false)
     private String sender;
 
+    private String recipient;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private MessageType type;
@@ -33,7 +46,4 @@ public class ChatMessage {
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime timestamp;
-
-    @Transient
-    private List<String> connectedUsers;
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+package com.gal4xyit.chat.chat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.gal4xyit.chat.config.ChatProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams chat_messages rows straight from a forward-only cursor to an output stream, one row in memory at a time,
+ * so an export costs the same heap whether it covers ten messages or the whole table.
+ */
+@Component
+public class ChatMessageExporter {
+
+    private static final String COLUMNS = "id, room, content, sender, recipient, type, timestamp";
+    private static final String CSV_HEADER = "id,room,sender,recipient,type,timestamp,content\n";
+    // Pre-Snowflake IDENTITY ids decode to the first moments of the id epoch whenever the row was written, so they are
+    // never excluded by an id bound. They all sit in the first month, the legacy partition of V6.
+    private static final long LEGACY_ID_LIMIT = ChatMessagePartitions.firstIdOf(YearMonth.of(2024, 2));
+    // An id is taken just before its row's timestamp, so the id bounds are widened to never cut off a matching row.
+    private static final Duration ID_BOUND_SLACK = Duration.ofMinutes(1);
+    private static final Instant FIRST_ID_INSTANT = MessageIds.timestampOf(0);
+    private static final Instant LAST_ID_INSTANT = MessageIds.timestampOf(Long.MAX_VALUE);
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv;charset=UTF-8", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+    }
+
+    private final JdbcTemplate cursorTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ObjectMapper objectMapper;
+
+    public ChatMessageExporter(JdbcTemplate jdbcTemplate,
+                               PlatformTransactionManager transactionManager,
+                               ObjectMapper objectMapper,
+                               ChatProperties chatProperties) {
+        // PostgreSQL only streams through a cursor with a fetch size inside a transaction, otherwise it buffers every row.
+        this.cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorTemplate.setFetchSize(chatProperties.getExport().getFetchSize());
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.objectMapper = objectMapper;
+    }
+
+    public long export(Format format, LocalDateTime from, LocalDateTime to, OutputStream out) throws IOException {
+        List<String> conditions = new ArrayList<>(2);
+        List<Object> args = new ArrayList<>(5);
+        // The timestamp decides; the id bounds only let PostgreSQL prune the monthly partitions outside the range.
+        if (from != null) {
+            conditions.add("timestamp >= ? AND (id >= ? OR id < ?)");
+            args.add(from);
+            args.add(firstIdAround(from.minus(ID_BOUND_SLACK)));
+            args.add(LEGACY_ID_LIMIT);
+        }
+        if (to != null) {
+            conditions.add("timestamp < ? AND id < ?");
+            args.add(to);
+            args.add(Math.max(firstIdAround(to.plus(ID_BOUND_SLACK)), LEGACY_ID_LIMIT));
+        }
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM chat_messages");
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        // In id order the partitions are read one after the other through their primary keys, with no sort to buffer.
+        sql.append(" ORDER BY id");
+        return format == Format.CSV
+                ? writeCsv(sql.toString(), args.toArray(), out)
+                : writeNdjson(sql.toString(), args.toArray(), out);
+    }
+
+    // Timestamps are written in the server's zone, ids from UTC milliseconds, and past 2093 no id is left to bound by.
+    private static long firstIdAround(LocalDateTime time) {
+        Instant instant = time.atZone(ZoneId.systemDefault()).toInstant();
+        if (instant.isBefore(FIRST_ID_INSTANT)) {
+            return 0;
+        }
+        return MessageIds.firstIdAt(instant.isAfter(LAST_ID_INSTANT) ? LAST_ID_INSTANT : instant);
+    }
+
+    // The table name must come from the catalog, never from a request.
+    long exportTable(String table, OutputStream out) throws IOException {
+        return writeNdjson("SELECT " + COLUMNS + " FROM " + table + " ORDER BY id", new Object[0], out);
+    }
+
+    // Ids go out as strings (ChatMessage serializes them with ToStringSerializer): Snowflake ids exceed 2^53, so a
+    // JavaScript or other double-based JSON reader would silently round them.
+    private long writeNdjson(String sql, Object[] args, OutputStream out) throws IOException {
+        try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(out)) {
+            return stream(sql, args, rs -> {
+                try {
+                    writer.write(toMessage(rs));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private long writeCsv(String sql, Object[] args, OutputStream out) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024)) {
+            writer.write(CSV_HEADER);
+            return stream(sql, args, rs -> {
+                try {
+                    writer.write(rs.getString("id"));
+                    writer.write(',');
+                    writeCsvField(writer, rs.getString("room"));
+                    writer.write(',');
+                    writeCsvField(writer, rs.getString("sender"));
+                    writer.write(',');
+                    writeCsvField(writer, rs.getString("recipient"));
+                    writer.write(',');
+                    writer.write(rs.getString("type"));
+                    writer.write(',');
+                    writer.write(rs.getTimestamp("timestamp").toLocalDateTime().toString());
+                    writer.write(',');
+                    writeCsvField(writer, rs.getString("content"));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    // A write failure (usually the client going away) surfaces as UncheckedIOException from inside the cursor loop.
+    private long stream(String sql, Object[] args, RowCallbackHandler rowWriter) throws IOException {
+        try {
+            Long rows = readOnlyTransaction.execute(status -> {
+                long[] count = {0};
+                cursorTemplate.query(sql, rs -> {
+                    rowWriter.processRow(rs);
+                    count[0]++;
+                }, args);
+                return count[0];
+            });
+            return rows != null ? rows : 0;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static ChatMessage toMessage(ResultSet rs) throws SQLException {
+        return ChatMessage.builder()
+                .id(rs.getLong("id"))
+                .room(rs.getString("room"))
+                .content(rs.getString("content"))
+                .sender(rs.getString("sender"))
+                .recipient(rs.getString("recipient"))
+                .type(MessageType.valueOf(rs.getString("type")))
+                .timestamp(rs.getTimestamp("timestamp").toLocalDateTime())
+                .build();
+    }
+
+    // RFC 4180: quoted only when needed, embedded quotes doubled.
+    static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,211 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps monthly partitions of chat_messages (ranges of Snowflake ids, see V4__partition_chat_messages.sql) created ahead
+ * of time and, with a retention configured, detaches expired months, exports them as gzipped NDJSON and drops them.
+ * Every step can be repeated, so a run interrupted by a shutdown is simply finished by the next one. Each node schedules
+ * the job, but a run only goes ahead on the node holding a PostgreSQL advisory lock; the others skip it.
+ */
+@Slf4j
+@Component
+public class ChatMessagePartitions implements SmartLifecycle {
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("chat_messages_p(\\d{4})_(\\d{2})");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+    // The MINVALUE partition of V4 once it held pre-Snowflake IDENTITY ids, renamed by V6__chat_messages_legacy_partition.sql.
+    static final String LEGACY_PARTITION = "chat_messages_legacy";
+
+    private static final String CREATE_PARTITION_SQL = "CREATE TABLE IF NOT EXISTS %s PARTITION OF chat_messages FOR VALUES FROM (%d) TO (%d)";
+    private static final String ATTACHED_SQL = "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+            + "WHERE i.inhparent = 'chat_messages'::regclass";
+    private static final String DETACHED_SQL = "SELECT relname FROM pg_class WHERE relnamespace = current_schema()::regnamespace "
+            + "AND relkind = 'r' AND NOT relispartition AND (relname LIKE 'chat\\_messages\\_p%' OR relname = '" + LEGACY_PARTITION + "')";
+    // Legacy ids say nothing about when a row was written, so that partition expires with its newest message instead.
+    private static final String NEWEST_TIMESTAMP_SQL = "SELECT max(timestamp) FROM %s";
+    private static final String DETACH_SQL = "ALTER TABLE chat_messages DETACH PARTITION %s";
+    private static final String DROP_SQL = "DROP TABLE %s";
+    // Session-level rather than transaction-level: the export streams in its own transaction, and each DETACH has to
+    // commit before it rather than hold chat_messages locked until the archive is written.
+    private static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_lock(?)";
+    private static final String UNLOCK_SQL = "SELECT pg_advisory_unlock(?)";
+    private static final long MAINTENANCE_LOCK = "chat_messages partition maintenance".hashCode();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ChatMessageExporter chatMessageExporter;
+    private final ChatProperties.Partitions properties;
+
+    private volatile boolean running;
+    private ScheduledExecutorService scheduler;
+
+    public ChatMessagePartitions(JdbcTemplate jdbcTemplate,
+                                 ChatMessageExporter chatMessageExporter,
+                                 ChatProperties chatProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chatMessageExporter = chatMessageExporter;
+        this.properties = chatProperties.getPartitions();
+    }
+
+    public static String partitionName(YearMonth month) {
+        return "chat_messages_p" + month.format(PARTITION_SUFFIX);
+    }
+
+    static YearMonth monthOf(String partition) {
+        Matcher matcher = PARTITION_NAME.matcher(partition);
+        return matcher.matches() ? YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))) : null;
+    }
+
+    static long firstIdOf(YearMonth month) {
+        return MessageIds.firstIdAt(month.atDay(1).atStartOfDay().toInstant(ZoneOffset.UTC));
+    }
+
+    void maintain() {
+        try {
+            // The lock lives as long as this connection's session; every other statement runs on connections of its own.
+            Boolean ran = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+                if (!advisoryLock(connection, TRY_LOCK_SQL)) {
+                    return false;
+                }
+                try {
+                    maintainPartitions();
+                } finally {
+                    advisoryLock(connection, UNLOCK_SQL);
+                }
+                return true;
+            });
+            if (!Boolean.TRUE.equals(ran)) {
+                log.debug("Skipping chat_messages partition maintenance, another node is running it");
+            }
+        } catch (RuntimeException e) {
+            log.warn("chat_messages partition maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    private void maintainPartitions() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i <= properties.getMonthsAhead(); i++) {
+            YearMonth month = current.plusMonths(i);
+            jdbcTemplate.execute(CREATE_PARTITION_SQL.formatted(partitionName(month), firstIdOf(month), firstIdOf(month.plusMonths(1))));
+        }
+        if (properties.getRetentionMonths() > 0) {
+            expireBefore(current.minusMonths(properties.getRetentionMonths()));
+        }
+    }
+
+    private static boolean advisoryLock(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, MAINTENANCE_LOCK);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getBoolean(1);
+            }
+        }
+    }
+
+    void expireBefore(YearMonth oldestKept) {
+        for (String partition : jdbcTemplate.queryForList(ATTACHED_SQL, String.class)) {
+            if (isExpired(partition, oldestKept)) {
+                // Detaching first takes the month out of every query, so it can be exported without competing with live traffic.
+                jdbcTemplate.execute(DETACH_SQL.formatted(partition));
+                log.info("Detached chat_messages partition {}", partition);
+            }
+        }
+        // Checked again here: a table detached by hand, or a newer month, is left alone rather than archived and dropped.
+        for (String table : jdbcTemplate.queryForList(DETACHED_SQL, String.class)) {
+            if (isExpired(table, oldestKept)) {
+                Path archive = export(table);
+                jdbcTemplate.execute(DROP_SQL.formatted(table));
+                log.info("Dropped chat_messages partition {} after archiving it to {}", table, archive);
+            }
+        }
+    }
+
+    private boolean isExpired(String table, YearMonth oldestKept) {
+        if (LEGACY_PARTITION.equals(table)) {
+            Timestamp newest = jdbcTemplate.queryForObject(NEWEST_TIMESTAMP_SQL.formatted(table), Timestamp.class);
+            return newest == null || YearMonth.from(newest.toLocalDateTime()).isBefore(oldestKept);
+        }
+        YearMonth month = monthOf(table);
+        return month != null && month.isBefore(oldestKept);
+    }
+
+    private Path export(String table) {
+        Path directory = Path.of(properties.getArchiveDir());
+        Path archive = directory.resolve(table + ".ndjson.gz");
+        Path partial = directory.resolve(table + ".ndjson.gz.partial");
+        long rows;
+        try {
+            Files.createDirectories(directory);
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(partial)), 64 * 1024)) {
+                rows = chatMessageExporter.exportTable(table, out);
+            }
+            // On disk before the rename, and the rename before the table is dropped: a crash loses neither copy.
+            try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(partial, archive, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not archive " + table + " to " + archive, e);
+        }
+        log.info("Archived {} chat messages from {} to {}", rows, table, archive);
+        return archive;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        if (!ChatSchemaCheck.isPostgres(jdbcTemplate)) {
+            log.info("Not maintaining chat_messages partitions, they only exist on PostgreSQL");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-partitions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = properties.getMaintenanceInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::maintain, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -1,13 +1,20 @@
 package com.gal4xyit.chat.chat;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 
 @Repository
-public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
-    List<ChatMessage> findTop100ByOrderByTimestampDesc();
+public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>, DirectMessageQueries {
     List<ChatMessage> findByTypeOrderByTimestampAsc(MessageType type);
-    // List<ChatMessage> findAllByOrderByTimestampDesc(Pageable pageable);
-}
\ No newline at end of file
+
+    // chat_messages is partitioned on id ranges: the cursor prunes newer months, and the id order lets PostgreSQL read
+    // the remaining months newest first and stop as soon as the limit is reached.
+    @Query("select new com.gal4xyit.chat.chat.ChatMessageView(m.id, m.sender, m.content, m.type, m.timestamp) " +
+            "from ChatMessage m where m.room = :room and m.id < :before order by m.id desc")
+    List<ChatMessageView> findViewsBefore(@Param("room") String room, @Param("before") long before, Limit limit);
+}
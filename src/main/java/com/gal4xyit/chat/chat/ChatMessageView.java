@@ -0,0 +1,15 @@
+package com.gal4xyit.chat.chat;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import java.time.LocalDateTime;
+
+public record ChatMessageView(
+        @JsonSerialize(using = ToStringSerializer.class) Long id,
+        String sender,
+        String content,
+        MessageType type,
+        LocalDateTime timestamp
+) {
+}
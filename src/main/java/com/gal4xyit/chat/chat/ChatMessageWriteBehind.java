@@ -0,0 +1,231 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+public class ChatMessageWriteBehind implements SmartLifecycle {
+
+    static final String INSERT_SQL = "INSERT INTO chat_messages (id, room, content, sender, recipient, type, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final int[] INSERT_TYPES = {Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChatProperties.WriteBehind properties;
+    private final BlockingQueue<ChatMessage> queue;
+
+    private final Timer flushTimer;
+    private final DistributionSummary batchSizes;
+    private final Counter inlineWrites;
+    private final Counter failedWrites;
+
+    private final Object progressMonitor = new Object();
+    private long enqueuedCount;
+    private long completedCount;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public ChatMessageWriteBehind(JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  ChatProperties chatProperties,
+                                  MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = chatProperties.getWriteBehind();
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+
+        Gauge.builder("chat.persistence.queue.size", queue, BlockingQueue::size)
+                .description("Chat messages waiting to be written to the database")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("chat.persistence.flush")
+                .description("Time taken to write one batch of chat messages")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("chat.persistence.batch.size")
+                .description("Number of chat messages per JDBC batch")
+                .register(meterRegistry);
+        this.inlineWrites = Counter.builder("chat.persistence.inline.writes")
+                .description("Messages written on the caller thread because the queue was full or stopped")
+                .register(meterRegistry);
+        this.failedWrites = Counter.builder("chat.persistence.failed.writes")
+                .description("Messages that could not be written to the database")
+                .register(meterRegistry);
+    }
+
+    public ChatMessage enqueue(ChatMessage message) {
+        if (message.getId() == null) {
+            message.setId(MessageIds.next());
+        }
+        if (message.getTimestamp() == null) {
+            message.setTimestamp(LocalDateTime.now());
+        }
+        synchronized (progressMonitor) {
+            enqueuedCount++;
+        }
+
+        boolean queued = false;
+        if (running) {
+            try {
+                queued = queue.offer(message, properties.getOfferTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!queued) {
+            inlineWrites.increment();
+            write(List.of(message));
+        }
+        return message;
+    }
+
+    public void flush() throws InterruptedException {
+        flush(properties.getShutdownTimeout().toMillis());
+    }
+
+    boolean flush(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (progressMonitor) {
+            long target = enqueuedCount;
+            while (completedCount < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                progressMonitor.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    private void runFlusher() {
+        long flushIntervalNanos = properties.getFlushInterval().toNanos();
+        List<ChatMessage> batch = new ArrayList<>(properties.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                ChatMessage first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < properties.getBatchSize()) {
+                    if (queue.drainTo(batch, properties.getBatchSize() - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    ChatMessage next = remaining > 0 && running ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.drainTo(batch);
+                write(batch);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<ChatMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            flushTimer.record(() -> transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT_SQL, toArgs(batch), INSERT_TYPES)));
+            batchSizes.record(batch.size());
+        } catch (RuntimeException batchFailure) {
+            log.warn("Batch insert of {} chat messages failed, retrying one by one: {}", batch.size(), batchFailure.getMessage());
+            for (ChatMessage message : batch) {
+                try {
+                    jdbcTemplate.update(INSERT_SQL, toArgs(List.of(message)).get(0), INSERT_TYPES);
+                } catch (RuntimeException e) {
+                    failedWrites.increment();
+                    log.error("Dropping chat message {} from {} after failed insert", message.getId(), message.getSender(), e);
+                }
+            }
+        } finally {
+            synchronized (progressMonitor) {
+                completedCount += batch.size();
+                progressMonitor.notifyAll();
+            }
+        }
+    }
+
+    private static List<Object[]> toArgs(List<ChatMessage> batch) {
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (ChatMessage message : batch) {
+            args.add(new Object[]{
+                    message.getId(),
+                    message.getRoom(),
+                    message.getContent(),
+                    message.getSender(),
+                    message.getRecipient(),
+                    message.getType().name(),
+                    message.getTimestamp()
+            });
+        }
+        return args;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        flusher = new Thread(this::runFlusher, "chat-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            flusher.join(properties.getShutdownTimeout().toMillis());
+            if (flusher.isAlive()) {
+                log.warn("Write-behind flusher did not finish within {}, interrupting", properties.getShutdownTimeout());
+                flusher.interrupt();
+                flusher.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.error("Write-behind queue stopped with {} chat messages unwritten", queue.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Stop only after the web server and the STOMP broker, so no new messages can arrive while draining.
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
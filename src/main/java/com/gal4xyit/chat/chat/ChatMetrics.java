@@ -0,0 +1,81 @@
+package com.gal4xyit.chat.chat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+@Component
+public class ChatMetrics {
+
+    public static final String ROOM = "room";
+    public static final String DIRECT = "direct";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<MessageType, Counter> messages = new EnumMap<>(MessageType.class);
+    private final Timer roomSend;
+    private final Timer directSend;
+    private final Timer roomPersist;
+    private final Timer directPersist;
+    private final Timer roomBroadcast;
+    private final Timer directBroadcast;
+
+    public ChatMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (MessageType type : MessageType.values()) {
+            messages.put(type, Counter.builder("chat.messages").tag("type", type.name())
+                    .description("Chat messages and presence transitions accepted by this node")
+                    .register(meterRegistry));
+        }
+        this.roomSend = sendTimer(ROOM);
+        this.directSend = sendTimer(DIRECT);
+        this.roomPersist = persistTimer(ROOM);
+        this.directPersist = persistTimer(DIRECT);
+        this.roomBroadcast = broadcastTimer(ROOM);
+        this.directBroadcast = broadcastTimer(DIRECT);
+    }
+
+    public void messageAccepted(MessageType type) {
+        messages.get(type).increment();
+    }
+
+    public Timer.Sample startSend() {
+        return Timer.start(meterRegistry);
+    }
+
+    public void stopSend(Timer.Sample sample, String kind) {
+        sample.stop(DIRECT.equals(kind) ? directSend : roomSend);
+    }
+
+    public Timer persist(String kind) {
+        return DIRECT.equals(kind) ? directPersist : roomPersist;
+    }
+
+    public Timer broadcast(String kind) {
+        return DIRECT.equals(kind) ? directBroadcast : roomBroadcast;
+    }
+
+    private Timer sendTimer(String kind) {
+        return Timer.builder("chat.message.send").tag("kind", kind)
+                .description("Time spent handling an inbound chat message, from validation to broadcast")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Timer persistTimer(String kind) {
+        return Timer.builder("chat.message.persist").tag("kind", kind)
+                .description("Time spent handing a chat message to the write-behind queue, including inline fallback writes")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Timer broadcastTimer(String kind) {
+        return Timer.builder("chat.message.broadcast").tag("kind", kind)
+                .description("Time spent fanning a chat message out to the broker")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
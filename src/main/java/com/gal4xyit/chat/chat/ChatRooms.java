@@ -0,0 +1,48 @@
+package com.gal4xyit.chat.chat;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+public final class ChatRooms {
+
+    public static final String DEFAULT_ROOM = "public";
+    public static final String SESSION_ROOMS_ATTRIBUTE = "rooms";
+    // Direct messages are stored under a name no client can pass as a room, so they never show up in room history.
+    public static final String DIRECT = "@direct";
+    public static final String DIRECT_QUEUE = "/queue/direct";
+
+    // No dots, so a room topic can never collide with another room's ".presence" topic (or a relay's routing keys).
+    private static final Pattern ROOM_NAME = Pattern.compile("[a-z0-9][a-z0-9_-]{0,63}");
+
+    private ChatRooms() {
+    }
+
+    public static boolean isValid(String room) {
+        return room != null && ROOM_NAME.matcher(room).matches();
+    }
+
+    public static String messageTopic(String room) {
+        return "/topic/" + room;
+    }
+
+    public static String presenceTopic(String room) {
+        return "/topic/" + room + ".presence";
+    }
+
+    // null for anything that is not a valid room's presence topic.
+    public static String roomOfPresenceTopic(String destination) {
+        if (destination == null || !destination.startsWith("/topic/") || !destination.endsWith(".presence")) {
+            return null;
+        }
+        String room = destination.substring("/topic/".length(), destination.length() - ".presence".length());
+        return isValid(room) ? room : null;
+    }
+
+    // Inbound frames of one session may be handled on several channel threads at once, hence a concurrent set.
+    @SuppressWarnings("unchecked")
+    public static Set<String> joinedRooms(Map<String, Object> sessionAttributes) {
+        return (Set<String>) sessionAttributes.computeIfAbsent(SESSION_ROOMS_ATTRIBUTE, key -> ConcurrentHashMap.newKeySet());
+    }
+}
@@ -0,0 +1,57 @@
+package com.gal4xyit.chat.chat;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+@Slf4j
+@Component
+// The entity manager factory waits for Flyway, so the migrations have run by the time this check does.
+@DependsOn("entityManagerFactory")
+public class ChatSchemaCheck implements InitializingBean {
+
+    // Room history, direct messages, the export's time range, search and presence history, in that order; without its
+    // index each of them silently becomes a table scan.
+    static final List<String> REQUIRED_INDEXES = List.of(
+            "idx_chat_messages_room_id",
+            "idx_chat_messages_direct",
+            "idx_chat_messages_timestamp_id",
+            "idx_chat_messages_content_tsv",
+            "idx_presence_events_room_id");
+
+    private static final String INDEXES_SQL = "SELECT indexname FROM pg_indexes WHERE schemaname = current_schema() "
+            + "AND tablename IN ('chat_messages', 'presence_events')";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ChatSchemaCheck(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!isPostgres(jdbcTemplate)) {
+            log.info("Skipping the chat index check, the migrations target PostgreSQL");
+            return;
+        }
+        Set<String> missing = new LinkedHashSet<>(REQUIRED_INDEXES);
+        jdbcTemplate.queryForList(INDEXES_SQL, String.class).forEach(missing::remove);
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Chat tables are missing indexes " + missing + ", check the Flyway migration history");
+        }
+    }
+
+    // Tests and the load test run on H2, which has neither the migrations nor the PostgreSQL catalogs.
+    static boolean isPostgres(JdbcTemplate jdbcTemplate) {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        return "PostgreSQL".equalsIgnoreCase(database);
+    }
+}
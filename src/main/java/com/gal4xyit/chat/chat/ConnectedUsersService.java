@@ -1,7 +1,8 @@
 package com.gal4xyit.chat.chat;
 
 import org.springframework.stereotype.Service;
-import java.util.Collections;
+
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -10,38 +11,101 @@ import java.util.concurrent.ConcurrentHashMap;
 @Service
 public class ConnectedUsersService {
 
-    private final Map<String, Set<String>> userSessions = new ConcurrentHashMap<>();
+    // Every change to a room runs inside compute* on this map, so a room is dropped when it empties without racing a join.
+    private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
 
-    public boolean addUserSession(String username, String sessionId) {
-        if (username == null || sessionId == null) {
+    public boolean addUserSession(String room, String username, String sessionId) {
+        if (room == null || username == null || sessionId == null) {
             return false;
         }
-        Set<String> sessions = userSessions.computeIfAbsent(username, k -> ConcurrentHashMap.newKeySet());
-        boolean firstSessionOverall = sessions.isEmpty();
-        sessions.add(sessionId);
-        return firstSessionOverall;
+        boolean[] firstSession = new boolean[1];
+        Room updated = rooms.compute(room, (name, current) -> {
+            Room target = current != null ? current : new Room();
+            Set<String> sessions = target.userSessions.computeIfAbsent(username, user -> {
+                firstSession[0] = true;
+                return new HashSet<>(2);
+            });
+            sessions.add(sessionId);
+            return target;
+        });
+        if (firstSession[0]) {
+            updated.rebuildRoster();
+        }
+        return firstSession[0];
     }
 
-    public boolean removeUserSession(String username, String sessionId) {
-        if (username == null || sessionId == null) {
+    public boolean removeUserSession(String room, String username, String sessionId) {
+        if (room == null || username == null || sessionId == null) {
             return false;
         }
-        Set<String> sessions = userSessions.get(username);
-        if (sessions != null) {
-            sessions.remove(sessionId);
-            if (sessions.isEmpty()) {
-                userSessions.remove(username);
-                return true;
+        boolean[] lastSession = new boolean[1];
+        Room[] changed = new Room[1];
+        rooms.computeIfPresent(room, (name, current) -> {
+            Set<String> sessions = current.userSessions.get(username);
+            if (sessions != null && sessions.remove(sessionId) && sessions.isEmpty()) {
+                current.userSessions.remove(username);
+                lastSession[0] = true;
+                changed[0] = current;
+            }
+            return current.userSessions.isEmpty() ? null : current;
+        });
+        if (lastSession[0]) {
+            changed[0].rebuildRoster();
+        }
+        return lastSession[0];
+    }
+
+    public Set<String> getConnectedUsers(String room) {
+        Room current = rooms.get(room);
+        return current != null ? current.roster : Set.of();
+    }
+
+    public boolean isUserOnline(String room, String username) {
+        Room current = rooms.get(room);
+        return current != null && username != null && current.userSessions.containsKey(username);
+    }
+
+    public Map<String, Set<String>> getRoomMembers() {
+        Map<String, Set<String>> members = new HashMap<>();
+        rooms.forEach((name, room) -> {
+            Set<String> roster = room.roster;
+            if (!roster.isEmpty()) {
+                members.put(name, roster);
+            }
+        });
+        return members;
+    }
+
+    // A session joined to several rooms is counted once per room.
+    public int getRoomSessionCount() {
+        int count = 0;
+        for (Room room : rooms.values()) {
+            for (Set<String> sessions : room.userSessions.values()) {
+                count += sessions.size();
             }
         }
-        return false;
+        return count;
     }
 
-    public Set<String> getConnectedUsers() {
-        return Collections.unmodifiableSet(new HashSet<>(userSessions.keySet()));
+    public int getOnlineUserCount() {
+        Set<String> users = new HashSet<>();
+        rooms.values().forEach(room -> users.addAll(room.roster));
+        return users.size();
     }
 
-    public boolean isUserOnline(String username) {
-        return userSessions.containsKey(username) && !userSessions.get(username).isEmpty();
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    private static final class Room {
+        private final ConcurrentHashMap<String, Set<String>> userSessions = new ConcurrentHashMap<>();
+        private volatile Set<String> roster = Set.of();
+
+        private void rebuildRoster() {
+            // Whoever rebuilds last reads the map after every transition that preceded it, so the final roster is exact.
+            synchronized (this) {
+                roster = Set.copyOf(userSessions.keySet());
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,11 @@
+package com.gal4xyit.chat.chat;
+
+import java.util.List;
+
+/**
+ * Queries on chat_messages that JPQL cannot express, mixed into {@link ChatMessageRepository}.
+ */
+public interface DirectMessageQueries {
+
+    List<ChatMessageView> findDirectViewsBefore(String user, String peer, long before, int limit);
+}
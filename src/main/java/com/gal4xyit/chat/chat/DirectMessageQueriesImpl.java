@@ -0,0 +1,42 @@
+package com.gal4xyit.chat.chat;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.List;
+
+class DirectMessageQueriesImpl implements DirectMessageQueries {
+
+    // An OR of the two directions plans as a BitmapOr over the (sender, recipient, id) index followed by a sort of the
+    // whole conversation. Each UNION ALL branch is instead one backward range scan of that index that stops after the
+    // limit, and the outer sort only merges those two short runs. The second branch is skipped for a note-to-self,
+    // where both directions are the same rows.
+    private static final String DIRECT_VIEWS_BEFORE_SQL = "SELECT id, sender, content, type, timestamp FROM ("
+            + "(SELECT id, sender, content, type, timestamp FROM chat_messages "
+            + "WHERE sender = ? AND recipient = ? AND id < ? ORDER BY id DESC LIMIT ?) "
+            + "UNION ALL "
+            + "(SELECT id, sender, content, type, timestamp FROM chat_messages "
+            + "WHERE sender = ? AND recipient = ? AND sender <> recipient AND id < ? ORDER BY id DESC LIMIT ?)"
+            + ") conversation ORDER BY id DESC LIMIT ?";
+
+    private static final RowMapper<ChatMessageView> VIEW_MAPPER = (rs, rowNum) -> new ChatMessageView(
+            rs.getLong("id"),
+            rs.getString("sender"),
+            rs.getString("content"),
+            MessageType.valueOf(rs.getString("type")),
+            rs.getTimestamp("timestamp").toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+
+    DirectMessageQueriesImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<ChatMessageView> findDirectViewsBefore(String user, String peer, long before, int limit) {
+        return jdbcTemplate.query(DIRECT_VIEWS_BEFORE_SQL, VIEW_MAPPER,
+                user, peer, before, limit,
+                peer, user, before, limit,
+                limit);
+    }
+}
@@ -0,0 +1,13 @@
+package com.gal4xyit.chat.chat;
+
+public record EncodedHistoryPage(
+        String etag,
+        byte[] json,
+        byte[] gzip
+) {
+
+    // Each representation needs its own strong validator (RFC 9110 8.8.3), or a cache may hand gzip to a client that did not ask for it.
+    public String gzipEtag() {
+        return etag.substring(0, etag.length() - 1) + "-gz\"";
+    }
+}
@@ -0,0 +1,232 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "chat.presence", name = "store", havingValue = "jdbc")
+public class JdbcPresenceStore implements PresenceStore {
+
+    private static final String INIT_ROOM_SQL =
+            "INSERT INTO presence_rooms (room, roster_version) SELECT ?, 0 WHERE NOT EXISTS (SELECT 1 FROM presence_rooms WHERE room = ?)";
+    private static final String LOCK_ROOM_SQL = "SELECT roster_version FROM presence_rooms WHERE room = ? FOR UPDATE";
+    private static final String UPDATE_ROOM_SQL = "UPDATE presence_rooms SET roster_version = ? WHERE room = ?";
+    private static final String NOW_SQL = "SELECT LOCALTIMESTAMP";
+    private static final String HEARTBEAT_SQL = "UPDATE presence_nodes SET last_heartbeat = LOCALTIMESTAMP WHERE node_id = ?";
+    private static final String INSERT_NODE_SQL = "INSERT INTO presence_nodes (node_id, last_heartbeat) VALUES (?, LOCALTIMESTAMP)";
+    private static final String DELETE_NODE_SQL = "DELETE FROM presence_nodes WHERE node_id = ?";
+    private static final String STALE_NODES_SQL = "SELECT node_id FROM presence_nodes WHERE last_heartbeat < ? AND node_id <> ?";
+    private static final String NODE_ENTRIES_SQL = "SELECT room, username FROM presence_room_entries WHERE node_id = ?";
+    private static final String INSERT_ENTRY_SQL = "INSERT INTO presence_room_entries (node_id, room, username) VALUES (?, ?, ?)";
+    private static final String DELETE_ENTRY_SQL = "DELETE FROM presence_room_entries WHERE node_id = ? AND room = ? AND username = ?";
+    private static final String DELETE_NODE_ENTRIES_SQL = "DELETE FROM presence_room_entries WHERE node_id = ?";
+    private static final String ONLINE_ELSEWHERE_SQL = "SELECT COUNT(*) FROM presence_room_entries e JOIN presence_nodes n ON n.node_id = e.node_id "
+            + "WHERE e.room = ? AND e.username = ? AND e.node_id <> ? AND n.last_heartbeat >= ?";
+    private static final String LIVE_ROSTER_SQL = "SELECT DISTINCT e.username FROM presence_room_entries e JOIN presence_nodes n ON n.node_id = e.node_id "
+            + "WHERE e.room = ? AND n.last_heartbeat >= ? ORDER BY e.username";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int nodeId;
+    private final Duration nodeTimeout;
+    private final Set<String> knownRooms = ConcurrentHashMap.newKeySet();
+
+    public JdbcPresenceStore(JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             ChatProperties chatProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.nodeId = chatProperties.getIds().getNodeId();
+        this.nodeTimeout = chatProperties.getPresence().getNodeTimeout();
+    }
+
+    @Override
+    public Optional<PresenceUpdate> apply(String room, List<String> joined, List<String> left) {
+        ensureRooms(List.of(room));
+        return transactionTemplate.execute(status -> {
+            long version = lockRosterVersion(room);
+            LocalDateTime liveSince = liveSince();
+            List<String> rosterJoined = new ArrayList<>();
+            for (String username : joined) {
+                if (!inRoomOnAnotherNode(room, username, nodeId, liveSince)) {
+                    rosterJoined.add(username);
+                }
+                jdbcTemplate.update(DELETE_ENTRY_SQL, nodeId, room, username);
+                jdbcTemplate.update(INSERT_ENTRY_SQL, nodeId, room, username);
+            }
+            List<String> rosterLeft = new ArrayList<>();
+            for (String username : left) {
+                jdbcTemplate.update(DELETE_ENTRY_SQL, nodeId, room, username);
+                if (!inRoomOnAnotherNode(room, username, nodeId, liveSince)) {
+                    rosterLeft.add(username);
+                }
+            }
+            return nextVersion(room, version, rosterJoined, rosterLeft);
+        });
+    }
+
+    @Override
+    public PresenceSnapshot snapshot(String room) {
+        ensureRooms(List.of(room));
+        return transactionTemplate.execute(status -> {
+            long version = lockRosterVersion(room);
+            return new PresenceSnapshot(room, version, jdbcTemplate.queryForList(LIVE_ROSTER_SQL, String.class, room, liveSince()));
+        });
+    }
+
+    public boolean heartbeat() {
+        return jdbcTemplate.update(HEARTBEAT_SQL, nodeId) > 0;
+    }
+
+    // Replaces whatever this node id left behind (a previous run, or entries expired while we were stalled) with the given members.
+    public List<PresenceUpdate> registerNode(Map<String, Set<String>> localMembers) {
+        Map<String, Set<String>> previous = nodeEntries(nodeId);
+        Set<String> rooms = new TreeSet<>(previous.keySet());
+        rooms.addAll(localMembers.keySet());
+        ensureRooms(rooms);
+        return transactionTemplate.execute(status -> {
+            Map<String, Long> versions = lockRosterVersions(rooms);
+            LocalDateTime liveSince = liveSince();
+            // Re-read under the room locks, the first read only told us which rooms to lock.
+            Map<String, Set<String>> leftBehind = nodeEntries(nodeId);
+            for (String room : leftBehind.keySet()) {
+                if (rooms.add(room)) {
+                    versions.put(room, lockRosterVersion(room));
+                }
+            }
+            jdbcTemplate.update(DELETE_NODE_ENTRIES_SQL, nodeId);
+            jdbcTemplate.update(DELETE_NODE_SQL, nodeId);
+            jdbcTemplate.update(INSERT_NODE_SQL, nodeId);
+
+            List<PresenceUpdate> updates = new ArrayList<>();
+            for (String room : rooms) {
+                Set<String> stale = leftBehind.getOrDefault(room, new LinkedHashSet<>());
+                List<String> rosterJoined = new ArrayList<>();
+                for (String username : localMembers.getOrDefault(room, Set.of())) {
+                    jdbcTemplate.update(INSERT_ENTRY_SQL, nodeId, room, username);
+                    if (!stale.remove(username) && !inRoomOnAnotherNode(room, username, nodeId, liveSince)) {
+                        rosterJoined.add(username);
+                    }
+                }
+                List<String> rosterLeft = stale.stream()
+                        .filter(username -> !inRoomOnAnotherNode(room, username, nodeId, liveSince))
+                        .toList();
+                nextVersion(room, versions.get(room), rosterJoined, rosterLeft).ifPresent(updates::add);
+            }
+            return updates;
+        });
+    }
+
+    public List<PresenceUpdate> expireStaleNodes() {
+        LocalDateTime liveSince = liveSince();
+        List<Integer> staleNodes = jdbcTemplate.queryForList(STALE_NODES_SQL, Integer.class, liveSince, nodeId);
+        if (staleNodes.isEmpty()) {
+            return List.of();
+        }
+        return transactionTemplate.execute(status -> {
+            Map<Integer, Map<String, Set<String>>> entriesByNode = new TreeMap<>();
+            Set<String> rooms = new TreeSet<>();
+            for (Integer staleNode : staleNodes) {
+                Map<String, Set<String>> entries = nodeEntries(staleNode);
+                entriesByNode.put(staleNode, entries);
+                rooms.addAll(entries.keySet());
+            }
+            Map<String, Long> versions = lockRosterVersions(rooms);
+
+            Map<String, Set<String>> leftByRoom = new TreeMap<>();
+            entriesByNode.forEach((staleNode, entries) -> {
+                if (jdbcTemplate.update(DELETE_NODE_SQL, staleNode) == 0) {
+                    return;  // Another node expired it while we were waiting for the room locks.
+                }
+                jdbcTemplate.update(DELETE_NODE_ENTRIES_SQL, staleNode);
+                entries.forEach((room, users) -> {
+                    for (String username : users) {
+                        if (!inRoomOnAnotherNode(room, username, staleNode, liveSince)) {
+                            leftByRoom.computeIfAbsent(room, key -> new LinkedHashSet<>()).add(username);
+                        }
+                    }
+                });
+                log.warn("Expired presence node {} with entries in {} rooms after missing heartbeats", staleNode, entries.size());
+            });
+
+            List<PresenceUpdate> updates = new ArrayList<>();
+            leftByRoom.forEach((room, left) ->
+                    nextVersion(room, versions.get(room), List.of(), List.copyOf(left)).ifPresent(updates::add));
+            return updates;
+        });
+    }
+
+    private void ensureRooms(Collection<String> rooms) {
+        for (String room : rooms) {
+            if (knownRooms.contains(room)) {
+                continue;
+            }
+            try {
+                jdbcTemplate.update(INIT_ROOM_SQL, room, room);
+            } catch (DuplicateKeyException e) {
+                log.debug("Presence row for room {} was created concurrently by another node", room);
+            }
+            knownRooms.add(room);
+        }
+    }
+
+    // Sorted, so two nodes locking overlapping rooms always take the row locks in the same order and cannot deadlock.
+    private Map<String, Long> lockRosterVersions(Set<String> sortedRooms) {
+        Map<String, Long> versions = new TreeMap<>();
+        for (String room : sortedRooms) {
+            versions.put(room, lockRosterVersion(room));
+        }
+        return versions;
+    }
+
+    private long lockRosterVersion(String room) {
+        Long version = jdbcTemplate.queryForObject(LOCK_ROOM_SQL, Long.class, room);
+        return version != null ? version : 0L;
+    }
+
+    private Map<String, Set<String>> nodeEntries(int node) {
+        Map<String, Set<String>> entries = new TreeMap<>();
+        jdbcTemplate.query(NODE_ENTRIES_SQL, rs -> {
+            entries.computeIfAbsent(rs.getString("room"), key -> new LinkedHashSet<>()).add(rs.getString("username"));
+        }, node);
+        return entries;
+    }
+
+    private Optional<PresenceUpdate> nextVersion(String room, long version, List<String> joined, List<String> left) {
+        if (joined.isEmpty() && left.isEmpty()) {
+            return Optional.empty();
+        }
+        jdbcTemplate.update(UPDATE_ROOM_SQL, version + 1, room);
+        return Optional.of(new PresenceUpdate(room, version + 1, joined, left));
+    }
+
+    private boolean inRoomOnAnotherNode(String room, String username, int excludedNode, LocalDateTime liveSince) {
+        Integer count = jdbcTemplate.queryForObject(ONLINE_ELSEWHERE_SQL, Integer.class, room, username, excludedNode, liveSince);
+        return count != null && count > 0;
+    }
+
+    private LocalDateTime liveSince() {
+        // Database time, so heartbeats from nodes with skewed clocks are still compared on one clock.
+        return jdbcTemplate.queryForObject(NOW_SQL, LocalDateTime.class).minus(nodeTimeout);
+    }
+}
@@ -0,0 +1,50 @@
+package com.gal4xyit.chat.chat;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+@Component
+@ConditionalOnProperty(prefix = "chat.presence", name = "store", havingValue = "local", matchIfMissing = true)
+public class LocalPresenceStore implements PresenceStore {
+
+    private final Map<String, RoomRoster> rooms = new HashMap<>();
+
+    @Override
+    public synchronized Optional<PresenceUpdate> apply(String room, List<String> joined, List<String> left) {
+        if (joined.isEmpty() && left.isEmpty()) {
+            return Optional.empty();
+        }
+        RoomRoster roster = rooms.computeIfAbsent(room, name -> new RoomRoster());
+        roster.published.addAll(joined);
+        roster.published.removeAll(left);
+        roster.snapshot = null;
+        // The version survives an emptied room, so a client that stays subscribed never sees it go backwards.
+        return Optional.of(new PresenceUpdate(room, ++roster.version, joined, left));
+    }
+
+    @Override
+    public synchronized PresenceSnapshot snapshot(String room) {
+        RoomRoster roster = rooms.get(room);
+        if (roster == null) {
+            return new PresenceSnapshot(room, 0, List.of());
+        }
+        if (roster.snapshot == null) {
+            roster.snapshot = new PresenceSnapshot(room, roster.version, List.copyOf(roster.published));
+        }
+        return roster.snapshot;
+    }
+
+    private static final class RoomRoster {
+        // The roster as clients know it, i.e. the sum of all published deltas, not the live session map.
+        private final Set<String> published = new TreeSet<>();
+        private long version;
+        private PresenceSnapshot snapshot;
+    }
+}
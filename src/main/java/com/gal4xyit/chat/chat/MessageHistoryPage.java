@@ -0,0 +1,23 @@
+package com.gal4xyit.chat.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public record MessageHistoryPage(
+        List<ChatMessageView> messages,
+        String nextCursor,
+        boolean hasMore
+) {
+
+    // Expects up to limit + 1 rows, newest first; the extra row only signals that older messages exist.
+    public static MessageHistoryPage fromNewestFirst(List<ChatMessageView> newestFirst, int limit) {
+        boolean hasMore = newestFirst.size() > limit;
+        int size = Math.min(newestFirst.size(), limit);
+        List<ChatMessageView> chronological = new ArrayList<>(size);
+        for (int i = size - 1; i >= 0; i--) {
+            chronological.add(newestFirst.get(i));
+        }
+        String nextCursor = hasMore ? String.valueOf(chronological.get(0).id()) : null;
+        return new MessageHistoryPage(chronological, nextCursor, hasMore);
+    }
+}
@@ -0,0 +1,131 @@
+package com.gal4xyit.chat.chat;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+public class MessageHistoryService {
+
+    // Clients use a handful of page sizes; any others are encoded per request rather than grow the snapshot map.
+    static final int MAX_SNAPSHOTS_PER_ROOM = 4;
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final RecentMessageCache recentMessageCache;
+    private final ObjectMapper objectMapper;
+    private final Counter snapshotHits;
+    private final Counter snapshotMisses;
+    private final Timer roomPages;
+    private final Timer directPages;
+
+    private final ConcurrentHashMap<String, LatestSnapshots> latestSnapshots = new ConcurrentHashMap<>();
+
+    public MessageHistoryService(ChatMessageRepository chatMessageRepository,
+                                 RecentMessageCache recentMessageCache,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.recentMessageCache = recentMessageCache;
+        this.objectMapper = objectMapper;
+        this.snapshotHits = Counter.builder("chat.history.snapshot.requests").tag("result", "hit")
+                .description("Newest-page requests answered with an already encoded snapshot")
+                .register(meterRegistry);
+        this.snapshotMisses = Counter.builder("chat.history.snapshot.requests").tag("result", "miss")
+                .description("Newest-page requests that had to encode a new snapshot")
+                .register(meterRegistry);
+        this.roomPages = Timer.builder("chat.history.page").tag("kind", "room")
+                .description("Time spent building an encoded room history page")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.directPages = Timer.builder("chat.history.page").tag("kind", "direct")
+                .description("Time spent building an encoded direct message history page")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public MessageHistoryPage page(String room, Long before, int limit) {
+        long cursor = before != null ? before : Long.MAX_VALUE;
+        return recentMessageCache.page(room, cursor, limit)
+                .orElseGet(() -> MessageHistoryPage.fromNewestFirst(
+                        chatMessageRepository.findViewsBefore(room, cursor, Limit.of(limit + 1)), limit));
+    }
+
+    // Conversations are not cached: each is read by two users only, so a ring buffer per pair would rarely be hit.
+    public EncodedHistoryPage encodedDirectPage(String user, String peer, Long before, int limit) {
+        long cursor = before != null ? before : Long.MAX_VALUE;
+        return directPages.record(() -> encode(MessageHistoryPage.fromNewestFirst(
+                chatMessageRepository.findDirectViewsBefore(user, peer, cursor, limit + 1), limit), false));
+    }
+
+    public EncodedHistoryPage encodedPage(String room, Long before, int limit) {
+        return roomPages.record(() -> encodeRoomPage(room, before, limit));
+    }
+
+    private EncodedHistoryPage encodeRoomPage(String room, Long before, int limit) {
+        long version = before == null ? recentMessageCache.version(room) : -1;
+        if (version < 0) {
+            return encode(page(room, before, limit), false);
+        }
+        // The newest page of a room changes only when its ring buffer does, so it is encoded once per cache version
+        // and page size. A new version replaces the whole entry, which drops the pages of every size at once.
+        LatestSnapshots snapshots = latestSnapshots.compute(room,
+                (key, current) -> current != null && current.version() == version ? current : new LatestSnapshots(version));
+        EncodedHistoryPage snapshot = snapshots.pages().get(limit);
+        if (snapshot != null) {
+            snapshotHits.increment();
+            return snapshot;
+        }
+        snapshotMisses.increment();
+        snapshot = encode(page(room, null, limit), true);
+        if (snapshots.pages().size() < MAX_SNAPSHOTS_PER_ROOM) {
+            snapshots.pages().putIfAbsent(limit, snapshot);
+        }
+        return snapshot;
+    }
+
+    private EncodedHistoryPage encode(MessageHistoryPage page, boolean withGzip) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(page);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize message history page", e);
+        }
+        return new EncodedHistoryPage(etagOf(page.messages(), json), json, withGzip ? gzip(json) : null);
+    }
+
+    private static String etagOf(List<ChatMessageView> messages, byte[] json) {
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        String newestId = messages.isEmpty() ? "0" : String.valueOf(messages.get(messages.size() - 1).id());
+        return "\"h" + newestId + "-" + messages.size() + "-" + Long.toHexString(crc.getValue()) + "\"";
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private record LatestSnapshots(long version, ConcurrentHashMap<Integer, EncodedHistoryPage> pages) {
+
+        LatestSnapshots(long version) {
+            this(version, new ConcurrentHashMap<>());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.gal4xyit.chat.chat;
+
+import java.time.Instant;
+
+public final class MessageIds {
+
+    // Shared by the Hibernate id generator and the write-behind queue, so there is exactly one sequence per node.
+    private static volatile SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0);
+
+    private MessageIds() {
+    }
+
+    public static void useNode(int nodeId) {
+        if (generator.getNodeId() != nodeId) {
+            generator = new SnowflakeIdGenerator(nodeId);
+        }
+    }
+
+    public static long next() {
+        return generator.nextId();
+    }
+
+    public static Instant timestampOf(long id) {
+        return SnowflakeIdGenerator.timestampOf(id);
+    }
+
+    public static long firstIdAt(Instant instant) {
+        return SnowflakeIdGenerator.firstIdAt(instant);
+    }
+}
@@ -0,0 +1,18 @@
+package com.gal4xyit.chat.chat;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+
+import java.time.LocalDateTime;
+
+public record MessageSearchHit(
+        @JsonSerialize(using = ToStringSerializer.class) Long id,
+        String room,
+        String sender,
+        String recipient,
+        String content,
+        MessageType type,
+        LocalDateTime timestamp,
+        float rank
+) {
+}
@@ -0,0 +1,18 @@
+package com.gal4xyit.chat.chat;
+
+import java.util.List;
+
+public record MessageSearchPage(
+        List<MessageSearchHit> messages,
+        String nextCursor,
+        boolean hasMore
+) {
+
+    // Expects up to limit + 1 rows, best match first; the extra row only signals that weaker matches exist.
+    public static MessageSearchPage fromRanked(List<MessageSearchHit> ranked, int limit) {
+        boolean hasMore = ranked.size() > limit;
+        List<MessageSearchHit> hits = hasMore ? List.copyOf(ranked.subList(0, limit)) : ranked;
+        String nextCursor = hasMore ? MessageSearchQuery.cursorOf(hits.get(hits.size() - 1)) : null;
+        return new MessageSearchPage(hits, nextCursor, hasMore);
+    }
+}
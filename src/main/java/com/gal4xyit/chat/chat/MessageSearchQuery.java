@@ -0,0 +1,39 @@
+package com.gal4xyit.chat.chat;
+
+import java.time.LocalDateTime;
+
+public record MessageSearchQuery(
+        String user,
+        String text,
+        String room,
+        String sender,
+        MessageType type,
+        LocalDateTime from,
+        LocalDateTime to,
+        Float afterRank,
+        Long afterId,
+        int limit
+) {
+
+    // "<rank>:<id>" of the last hit of a page. Float.toString round-trips exactly, so the next page resumes on the same row.
+    public static String cursorOf(MessageSearchHit hit) {
+        return hit.rank() + ":" + hit.id();
+    }
+
+    public MessageSearchQuery after(String cursor) {
+        if (cursor == null) {
+            return this;
+        }
+        int separator = cursor.indexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Malformed search cursor: " + cursor);
+        }
+        try {
+            float rank = Float.parseFloat(cursor.substring(0, separator));
+            long id = Long.parseLong(cursor.substring(separator + 1));
+            return new MessageSearchQuery(user, text, room, sender, type, from, to, rank, id, limit);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed search cursor: " + cursor, e);
+        }
+    }
+}
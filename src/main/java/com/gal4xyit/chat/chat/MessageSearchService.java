@@ -0,0 +1,88 @@
+package com.gal4xyit.chat.chat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+public class MessageSearchService {
+
+    // Must match the configuration the content_tsv column is generated with in the migrations.
+    static final String TEXT_SEARCH_CONFIG = "simple";
+
+    // Matching goes through the GIN index on content_tsv; only the matches are ranked and sorted.
+    private static final String MATCHES_SQL = "SELECT m.id, m.room, m.sender, m.recipient, m.content, m.type, m.timestamp, "
+            + "ts_rank(m.content_tsv, q) AS rank "
+            + "FROM chat_messages m CROSS JOIN websearch_to_tsquery('" + TEXT_SEARCH_CONFIG + "', ?) q "
+            + "WHERE m.content_tsv @@ q "
+            // Room messages are public to every user; direct messages only to their two participants.
+            + "AND (m.recipient IS NULL OR m.sender = ? OR m.recipient = ?)";
+
+    private static final RowMapper<MessageSearchHit> HIT_MAPPER = (rs, rowNum) -> new MessageSearchHit(
+            rs.getLong("id"),
+            rs.getString("room"),
+            rs.getString("sender"),
+            rs.getString("recipient"),
+            rs.getString("content"),
+            MessageType.valueOf(rs.getString("type")),
+            rs.getTimestamp("timestamp").toLocalDateTime(),
+            rs.getFloat("rank"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Timer searches;
+
+    public MessageSearchService(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.searches = Timer.builder("chat.search")
+                .description("Time spent answering one full-text message search page")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public MessageSearchPage search(MessageSearchQuery query) {
+        return searches.record(() -> MessageSearchPage.fromRanked(findRanked(query), query.limit()));
+    }
+
+    private List<MessageSearchHit> findRanked(MessageSearchQuery query) {
+        StringBuilder sql = new StringBuilder(MATCHES_SQL);
+        List<Object> args = new ArrayList<>(List.of(query.text(), query.user(), query.user()));
+        if (query.room() != null) {
+            sql.append(" AND m.room = ?");
+            args.add(query.room());
+        }
+        if (query.sender() != null) {
+            sql.append(" AND m.sender = ?");
+            args.add(query.sender());
+        }
+        if (query.type() != null) {
+            sql.append(" AND m.type = ?");
+            args.add(query.type().name());
+        }
+        if (query.from() != null) {
+            sql.append(" AND m.timestamp >= ?");
+            args.add(query.from());
+        }
+        if (query.to() != null) {
+            sql.append(" AND m.timestamp < ?");
+            args.add(query.to());
+        }
+
+        // Keyset on (rank, id): the rank is recomputed identically per row, so the previous page's last hit compares exactly.
+        sql.insert(0, "SELECT * FROM (").append(") hits");
+        if (query.afterRank() != null && query.afterId() != null) {
+            sql.append(" WHERE hits.rank < CAST(? AS real) OR (hits.rank = CAST(? AS real) AND hits.id < ?)");
+            args.add(query.afterRank());
+            args.add(query.afterRank());
+            args.add(query.afterId());
+        }
+        sql.append(" ORDER BY hits.rank DESC, hits.id DESC LIMIT ?");
+        args.add(query.limit() + 1);
+
+        return jdbcTemplate.query(sql.toString(), HIT_MAPPER, args.toArray());
+    }
+}
@@ -0,0 +1,155 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+public class PresenceAggregator implements SmartLifecycle {
+
+    private final PresencePublisher presencePublisher;
+    private final PresenceEventLog presenceEventLog;
+    private final Duration debounceWindow;
+
+    private final Counter cancelledTransitions;
+    private final DistributionSummary transitionsPerUpdate;
+
+    private final Map<RoomMember, MessageType> pending = new LinkedHashMap<>();
+    private final Object flushLock = new Object();
+    private boolean flushScheduled;
+
+    private volatile boolean running;
+    private ScheduledExecutorService scheduler;
+
+    public PresenceAggregator(PresencePublisher presencePublisher,
+                              PresenceEventLog presenceEventLog,
+                              ChatProperties chatProperties,
+                              MeterRegistry meterRegistry) {
+        this.presencePublisher = presencePublisher;
+        this.presenceEventLog = presenceEventLog;
+        this.debounceWindow = chatProperties.getPresence().getDebounceWindow();
+
+        this.cancelledTransitions = Counter.builder("chat.presence.cancelled.transitions")
+                .description("Join/leave pairs that cancelled out within one debounce window")
+                .register(meterRegistry);
+        this.transitionsPerUpdate = DistributionSummary.builder("chat.presence.update.size")
+                .description("Roster transitions merged into one presence update")
+                .register(meterRegistry);
+    }
+
+    public void userJoined(String room, String username) {
+        record(new RoomMember(room, username), MessageType.JOIN);
+    }
+
+    public void userLeft(String room, String username) {
+        record(new RoomMember(room, username), MessageType.LEAVE);
+    }
+
+    private void record(RoomMember member, MessageType transition) {
+        boolean flushNow;
+        synchronized (pending) {
+            MessageType previous = pending.remove(member);
+            if (previous != null && previous != transition) {
+                cancelledTransitions.increment();
+            } else {
+                pending.put(member, transition);
+            }
+            flushNow = !running || debounceWindow.isZero();
+            if (!flushNow && !flushScheduled && !pending.isEmpty()) {
+                scheduler.schedule(this::flush, debounceWindow.toNanos(), TimeUnit.NANOSECONDS);
+                flushScheduled = true;
+            }
+        }
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        // Held across publish so two flushes can never reach clients out of order for the same user.
+        synchronized (flushLock) {
+            Map<RoomMember, MessageType> batch;
+            synchronized (pending) {
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+                flushScheduled = false;
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            Map<String, List<String>> joinedByRoom = new LinkedHashMap<>();
+            Map<String, List<String>> leftByRoom = new LinkedHashMap<>();
+            List<PresenceEventView> events = new ArrayList<>(batch.size());
+            LocalDateTime now = LocalDateTime.now();
+            batch.forEach((member, transition) -> {
+                (transition == MessageType.JOIN ? joinedByRoom : leftByRoom)
+                        .computeIfAbsent(member.room(), room -> new ArrayList<>()).add(member.username());
+                events.add(new PresenceEventView(MessageIds.next(), member.room(), member.username(), transition, now));
+            });
+            presenceEventLog.append(events);
+            Set<String> rooms = new LinkedHashSet<>(joinedByRoom.keySet());
+            rooms.addAll(leftByRoom.keySet());
+            for (String room : rooms) {
+                List<String> joined = joinedByRoom.getOrDefault(room, List.of());
+                List<String> left = leftByRoom.getOrDefault(room, List.of());
+                presencePublisher.publish(room, joined, left);
+                transitionsPerUpdate.record(joined.size() + left.size());
+            }
+        }
+    }
+
+    private record RoomMember(String room, String username) {
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-presence-aggregator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        synchronized (pending) {
+            running = false;
+        }
+        scheduler.shutdownNow();
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Could not publish final presence update on shutdown: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Stops before the presence event log so the final transitions are still written.
+        return SmartLifecycle.DEFAULT_PHASE - 2048;
+    }
+}
@@ -0,0 +1,21 @@
+package com.gal4xyit.chat.chat;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
+import org.springframework.stereotype.Controller;
+
+@Controller
+@RequiredArgsConstructor
+public class PresenceController {
+
+    private final PresencePublisher presencePublisher;
+
+    @SubscribeMapping("/presence/{room}")
+    public PresenceSnapshot presenceSnapshot(@DestinationVariable String room) {
+        if (!ChatRooms.isValid(room)) {
+            throw new IllegalArgumentException("Invalid room name: " + room);
+        }
+        return presencePublisher.snapshot(room);
+    }
+}
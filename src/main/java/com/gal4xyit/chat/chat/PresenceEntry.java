@@ -0,0 +1,47 @@
+package com.gal4xyit.chat.chat;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@IdClass(PresenceEntry.Key.class)
+@Table(name = "presence_room_entries", indexes = @Index(name = "idx_presence_room_entries_room_username", columnList = "room, username"))
+public class PresenceEntry {
+
+    @Id
+    @Column(name = "node_id")
+    private Integer nodeId;
+
+    @Id
+    @Column(name = "room", length = 64)
+    private String room;
+
+    @Id
+    @Column(name = "username")
+    private String username;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Integer nodeId;
+        private String room;
+        private String username;
+    }
+}
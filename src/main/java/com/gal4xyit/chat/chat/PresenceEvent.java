@@ -0,0 +1,38 @@
+package com.gal4xyit.chat.chat;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Never read or written through JPA, PresenceEventLog uses JdbcTemplate. The mapping only exists so that ddl-auto
+// creates presence_events for the H2 test profile; on PostgreSQL the table comes from V5__presence_events.sql.
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "presence_events", indexes = @Index(name = "idx_presence_events_room_id", columnList = "room, id"))
+public class PresenceEvent {
+
+    @Id
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "room", length = 64, nullable = false)
+    private String room;
+
+    @Column(name = "username", nullable = false)
+    private String username;
+
+    @Column(name = "joined", nullable = false)
+    private boolean joined;
+
+    @Column(name = "timestamp", nullable = false)
+    private LocalDateTime timestamp;
+}
@@ -0,0 +1,126 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only log of join/leave transitions, kept apart from chat_messages so presence churn neither doubles the chat
+ * write volume nor pushes real messages out of history. Each presence flush is written as one JDBC batch on a
+ * background thread; when the backlog is full the batch is dropped, since presence history is best effort.
+ */
+@Slf4j
+@Component
+public class PresenceEventLog implements SmartLifecycle {
+
+    private static final String INSERT_SQL = "INSERT INTO presence_events (id, room, username, joined, timestamp) VALUES (?, ?, ?, ?, ?)";
+    private static final int[] INSERT_TYPES = {Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.BOOLEAN, Types.TIMESTAMP};
+    private static final String PAGE_SQL = "SELECT id, room, username, joined, timestamp FROM presence_events "
+            + "WHERE room = ? AND id < ? ORDER BY id DESC LIMIT ?";
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private static final RowMapper<PresenceEventView> VIEW_MAPPER = (rs, rowNum) -> new PresenceEventView(
+            rs.getLong("id"),
+            rs.getString("room"),
+            rs.getString("username"),
+            rs.getBoolean("joined") ? MessageType.JOIN : MessageType.LEAVE,
+            rs.getTimestamp("timestamp").toLocalDateTime());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int queueCapacity;
+    private final Counter droppedBatches;
+    private final Counter failedWrites;
+
+    private volatile boolean running;
+    private ThreadPoolExecutor writer;
+
+    public PresenceEventLog(JdbcTemplate jdbcTemplate, ChatProperties chatProperties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queueCapacity = chatProperties.getPresence().getEventLogQueueCapacity();
+        this.droppedBatches = Counter.builder("chat.presence.events.dropped.batches")
+                .description("Presence event batches dropped because the event log writer was backlogged")
+                .register(meterRegistry);
+        this.failedWrites = Counter.builder("chat.presence.events.failed.writes")
+                .description("Presence events that could not be written to the event log")
+                .register(meterRegistry);
+    }
+
+    public void append(List<PresenceEventView> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        ThreadPoolExecutor current = writer;
+        if (!running || current == null) {
+            write(events);
+            return;
+        }
+        current.execute(() -> write(events));
+    }
+
+    public PresenceEventPage page(String room, Long before, int limit) {
+        long cursor = before != null ? before : Long.MAX_VALUE;
+        return PresenceEventPage.fromNewestFirst(jdbcTemplate.query(PAGE_SQL, VIEW_MAPPER, room, cursor, limit + 1), limit);
+    }
+
+    private void write(List<PresenceEventView> events) {
+        List<Object[]> args = new ArrayList<>(events.size());
+        for (PresenceEventView event : events) {
+            args.add(new Object[]{event.id(), event.room(), event.username(), event.type() == MessageType.JOIN, event.timestamp()});
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, args, INSERT_TYPES);
+        } catch (RuntimeException e) {
+            failedWrites.increment(events.size());
+            log.warn("Could not write {} presence events: {}", events.size(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void start() {
+        writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "chat-presence-events");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, executor) -> droppedBatches.increment());
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("Presence event log stopped with {} batches unwritten", writer.getQueue().size());
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // Stops after the presence aggregator, so the transitions of its final flush are still written.
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
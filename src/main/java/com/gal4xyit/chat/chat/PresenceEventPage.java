@@ -0,0 +1,23 @@
+package com.gal4xyit.chat.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public record PresenceEventPage(
+        List<PresenceEventView> events,
+        String nextCursor,
+        boolean hasMore
+) {
+
+    // Same shape as MessageHistoryPage: up to limit + 1 rows newest first in, one chronological page out.
+    public static PresenceEventPage fromNewestFirst(List<PresenceEventView> newestFirst, int limit) {
+        boolean hasMore = newestFirst.size() > limit;
+        int size = Math.min(newestFirst.size(), limit);
+        List<PresenceEventView> chronological = new ArrayList<>(size);
+        for (int i = size - 1; i >= 0; i--) {
+            chronological.add(newestFirst.get(i));
+        }
+        String nextCursor = hasMore ? String.valueOf(chronological.get(0).id()) : null;
+        return new PresenceEventPage(chronological, nextCursor, hasMore);
+    }
+}
@@ -0,0 +1,92 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.broker.BrokerAvailabilityEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "chat.presence", name = "store", havingValue = "jdbc")
+public class PresenceNodeHeartbeat implements SmartLifecycle {
+
+    private final JdbcPresenceStore presenceStore;
+    private final PresencePublisher presencePublisher;
+    private final ConnectedUsersService connectedUsersService;
+    private final Duration heartbeatInterval;
+
+    private volatile boolean registered;
+    private volatile boolean running;
+    private ScheduledExecutorService scheduler;
+
+    public PresenceNodeHeartbeat(JdbcPresenceStore presenceStore,
+                                 PresencePublisher presencePublisher,
+                                 ConnectedUsersService connectedUsersService,
+                                 ChatProperties chatProperties) {
+        this.presenceStore = presenceStore;
+        this.presencePublisher = presencePublisher;
+        this.connectedUsersService = connectedUsersService;
+        this.heartbeatInterval = chatProperties.getPresence().getHeartbeatInterval();
+    }
+
+    // Registration publishes a delta, so it waits until the broker (simple or relay) can actually deliver it.
+    @EventListener
+    public void onBrokerAvailability(BrokerAvailabilityEvent event) {
+        if (event.isBrokerAvailable() && !registered) {
+            presencePublisher.publish(() -> presenceStore.registerNode(connectedUsersService.getRoomMembers()));
+            registered = true;
+        }
+    }
+
+    void beat() {
+        if (!registered) {
+            return;
+        }
+        try {
+            if (!presenceStore.heartbeat()) {
+                log.warn("Presence node row was missing (expired by another node?), re-registering local users");
+                presencePublisher.publish(() -> presenceStore.registerNode(connectedUsersService.getRoomMembers()));
+            }
+            presencePublisher.publish(presenceStore::expireStaleNodes);
+        } catch (RuntimeException e) {
+            log.warn("Presence heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-presence-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = heartbeatInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::beat, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        // Entries of sessions still open are left behind; other nodes expire them after the node timeout.
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 3072;
+    }
+}
@@ -0,0 +1,34 @@
+package com.gal4xyit.chat.chat;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+@Service
+@RequiredArgsConstructor
+public class PresencePublisher {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PresenceStore presenceStore;
+
+    public Optional<PresenceUpdate> publish(String room, List<String> joined, List<String> left) {
+        return publish(() -> presenceStore.apply(room, joined, left).stream().toList()).stream().findFirst();
+    }
+
+    // Held across store and send so this node never emits its own versions of a room out of order.
+    public synchronized List<PresenceUpdate> publish(Supplier<List<PresenceUpdate>> change) {
+        List<PresenceUpdate> updates = change.get();
+        for (PresenceUpdate update : updates) {
+            messagingTemplate.convertAndSend(ChatRooms.presenceTopic(update.room()), update);
+        }
+        return updates;
+    }
+
+    public PresenceSnapshot snapshot(String room) {
+        return presenceStore.snapshot(room);
+    }
+}
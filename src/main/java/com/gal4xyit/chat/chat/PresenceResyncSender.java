@@ -0,0 +1,43 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.SlowConsumerSessionDecorator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pushes the current roster to a subscriber whose presence deltas were dropped by the SNAPSHOT slow-consumer policy.
+ * The snapshot goes straight to the client outbound channel, addressed like a @SubscribeMapping reply, so only that
+ * one subscription receives it and every other subscriber of the topic is left alone.
+ */
+@Component
+public class PresenceResyncSender implements SlowConsumerSessionDecorator.PresenceResync {
+
+    private final PresencePublisher presencePublisher;
+    private final SimpMessagingTemplate clientMessagingTemplate;
+
+    public PresenceResyncSender(PresencePublisher presencePublisher,
+                                @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                                @Qualifier("brokerMessageConverter") MessageConverter brokerMessageConverter) {
+        this.presencePublisher = presencePublisher;
+        this.clientMessagingTemplate = new SimpMessagingTemplate(clientOutboundChannel);
+        this.clientMessagingTemplate.setMessageConverter(brokerMessageConverter);
+    }
+
+    @Override
+    public void resync(String sessionId, String subscriptionId, String destination) {
+        String room = ChatRooms.roomOfPresenceTopic(destination);
+        if (room == null) {
+            return;
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(subscriptionId);
+        headers.setLeaveMutable(true);
+        clientMessagingTemplate.convertAndSend(destination, presencePublisher.snapshot(room), headers.getMessageHeaders());
+    }
+}
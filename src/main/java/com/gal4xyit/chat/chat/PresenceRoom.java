@@ -0,0 +1,24 @@
+package com.gal4xyit.chat.chat;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "presence_rooms")
+public class PresenceRoom {
+
+    @Id
+    @Column(name = "room", length = 64)
+    private String room;
+
+    @Column(name = "roster_version", nullable = false)
+    private Long rosterVersion;
+}
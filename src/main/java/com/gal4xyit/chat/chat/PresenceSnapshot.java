@@ -0,0 +1,6 @@
+package com.gal4xyit.chat.chat;
+
+import java.util.List;
+
+public record PresenceSnapshot(String room, long version, List<String> users) {
+}
@@ -0,0 +1,12 @@
+package com.gal4xyit.chat.chat;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface PresenceStore {
+
+    // Returns the room's roster-wide change, if any: joining here while already in the room on another node is not one.
+    Optional<PresenceUpdate> apply(String room, List<String> joined, List<String> left);
+
+    PresenceSnapshot snapshot(String room);
+}
@@ -0,0 +1,6 @@
+package com.gal4xyit.chat.chat;
+
+import java.util.List;
+
+public record PresenceUpdate(String room, long version, List<String> joined, List<String> left) {
+}
@@ -0,0 +1,206 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+@Slf4j
+@Component
+public class RecentMessageCache implements SmartInitializingSingleton {
+
+    private static final Comparator<ChatMessageView> NEWEST_FIRST = Comparator.comparing(ChatMessageView::id).reversed();
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final int capacity;
+    private final int cachedRooms;
+    private final Counter hits;
+    private final Counter misses;
+
+    private final ConcurrentHashMap<String, RoomBuffer> rooms = new ConcurrentHashMap<>();
+
+    public RecentMessageCache(ChatMessageRepository chatMessageRepository,
+                              ChatProperties chatProperties,
+                              MeterRegistry meterRegistry) {
+        this.chatMessageRepository = chatMessageRepository;
+        // A node's ring would only hold the messages sent through that node, so every node reads history from the database.
+        this.capacity = chatProperties.isMultiNode() ? 0 : chatProperties.getHistory().getCacheCapacity();
+        if (chatProperties.isMultiNode()) {
+            log.info("Recent message cache disabled: with the broker relay or the JDBC presence store history is read from the database");
+        }
+        this.cachedRooms = chatProperties.getHistory().getCachedRooms();
+
+        Gauge.builder("chat.history.cache.size", this, RecentMessageCache::size)
+                .description("Messages held in the recent history ring buffers of all rooms")
+                .register(meterRegistry);
+        Gauge.builder("chat.history.cache.rooms", rooms, Map::size)
+                .description("Rooms with a recent history ring buffer")
+                .register(meterRegistry);
+        this.hits = Counter.builder("chat.history.cache.requests").tag("result", "hit")
+                .description("History pages served from the ring buffer")
+                .register(meterRegistry);
+        this.misses = Counter.builder("chat.history.cache.requests").tag("result", "miss")
+                .description("History pages that had to be read from the database")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        reload();
+    }
+
+    public void reload() {
+        if (capacity <= 0) {
+            return;
+        }
+        Set<String> known = new LinkedHashSet<>(rooms.keySet());
+        known.add(ChatRooms.DEFAULT_ROOM);
+        for (String room : known) {
+            RoomBuffer buffer = rooms.computeIfAbsent(room, key -> new RoomBuffer());
+            warm(room, buffer);
+        }
+    }
+
+    private void warm(String room, RoomBuffer buffer) {
+        try {
+            List<ChatMessageView> newestFirst = chatMessageRepository.findViewsBefore(room, Long.MAX_VALUE, Limit.of(capacity));
+            Ring warmed = new Ring(capacity, newestFirst.size() < capacity);
+            for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                warmed.append(newestFirst.get(i));
+            }
+            buffer.ring = warmed;
+            buffer.version.incrementAndGet();
+            log.info("Recent message cache for room {} warmed with {} messages", room, newestFirst.size());
+        } catch (RuntimeException e) {
+            log.warn("Could not warm recent message cache for room {}, its history will be read from the database until it fills: {}",
+                    room, e.getMessage());
+        }
+    }
+
+    public void append(ChatMessage message) {
+        RoomBuffer buffer = bufferFor(message.getRoom());
+        if (buffer != null) {
+            buffer.ring.append(new ChatMessageView(message.getId(), message.getSender(), message.getContent(),
+                    message.getType(), message.getTimestamp()));
+            buffer.version.incrementAndGet();
+        }
+    }
+
+    // -1 when the room has no ring buffer (cache disabled or too many rooms), so callers know not to reuse anything.
+    public long version(String room) {
+        RoomBuffer buffer = bufferFor(room);
+        return buffer != null ? buffer.version.get() : -1;
+    }
+
+    public Optional<MessageHistoryPage> page(String room, long before, int limit) {
+        RoomBuffer buffer = bufferFor(room);
+        if (buffer != null) {
+            Ring current = buffer.ring;
+            List<ChatMessageView> newestFirst = current.newestFirstBefore(before, limit + 1);
+            if (newestFirst.size() > limit || current.coversWholeTable()) {
+                hits.increment();
+                return Optional.of(MessageHistoryPage.fromNewestFirst(newestFirst, limit));
+            }
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public int size() {
+        int size = 0;
+        for (RoomBuffer buffer : rooms.values()) {
+            size += buffer.ring.size();
+        }
+        return size;
+    }
+
+    private RoomBuffer bufferFor(String room) {
+        if (capacity <= 0 || room == null) {
+            return null;
+        }
+        RoomBuffer buffer = rooms.get(room);
+        if (buffer != null || rooms.size() >= cachedRooms) {
+            return buffer;
+        }
+        // Warmed inside computeIfAbsent so no append can land in a ring that the warm-up is about to replace.
+        return rooms.computeIfAbsent(room, key -> {
+            RoomBuffer created = new RoomBuffer();
+            warm(key, created);
+            return created;
+        });
+    }
+
+    private final class RoomBuffer {
+        private final AtomicLong version = new AtomicLong();
+        private volatile Ring ring = new Ring(capacity, false);
+    }
+
+    private record Slot(long sequence, ChatMessageView message) {
+    }
+
+    private static final class Ring {
+        private final AtomicReferenceArray<Slot> slots;
+        private final AtomicLong nextSequence = new AtomicLong();
+        private final boolean warmedWithWholeTable;
+
+        private Ring(int capacity, boolean warmedWithWholeTable) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.warmedWithWholeTable = warmedWithWholeTable;
+        }
+
+        void append(ChatMessageView message) {
+            long sequence = nextSequence.getAndIncrement();
+            slots.set((int) (sequence % slots.length()), new Slot(sequence, message));
+        }
+
+        boolean coversWholeTable() {
+            return warmedWithWholeTable && nextSequence.get() <= slots.length();
+        }
+
+        int size() {
+            return (int) Math.min(nextSequence.get(), slots.length());
+        }
+
+        List<ChatMessageView> newestFirstBefore(long before, int max) {
+            long end = nextSequence.get();
+            long start = Math.max(0, end - slots.length());
+            List<ChatMessageView> matching = new ArrayList<>();
+            for (long sequence = start; sequence < end; sequence++) {
+                Slot slot = slots.get((int) (sequence % slots.length()));
+                // A slot may still hold its previous occupant (append in flight) or already a lapping writer's entry.
+                if (slot != null && slot.sequence() == sequence && slot.message().id() < before) {
+                    matching.add(slot.message());
+                }
+            }
+            matching.sort(NEWEST_FIRST);
+
+            List<ChatMessageView> result = new ArrayList<>(Math.min(max, matching.size()));
+            long previousId = Long.MIN_VALUE;
+            for (ChatMessageView message : matching) {
+                if (result.size() == max) {
+                    break;
+                }
+                if (message.id() != previousId) {
+                    result.add(message);
+                    previousId = message.id();
+                }
+            }
+            return result;
+        }
+    }
+}
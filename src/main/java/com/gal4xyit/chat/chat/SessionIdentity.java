@@ -0,0 +1,62 @@
+package com.gal4xyit.chat.chat;
+
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.util.StringUtils;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public record SessionIdentity(String username, Set<String> roles) {
+
+    public static final String SESSION_ATTRIBUTE = "identity";
+
+    public boolean hasRole(String role) {
+        return roles.contains(role);
+    }
+
+    // Cached by SessionIdentityInterceptor at CONNECT; resolved here only if the principal showed up after that.
+    public static SessionIdentity of(SimpMessageHeaderAccessor headerAccessor) {
+        Map<String, Object> sessionAttributes = headerAccessor.getSessionAttributes();
+        if (sessionAttributes == null) {
+            return resolve(headerAccessor.getUser());
+        }
+        SessionIdentity identity = (SessionIdentity) sessionAttributes.get(SESSION_ATTRIBUTE);
+        if (identity == null) {
+            identity = resolve(headerAccessor.getUser());
+            if (identity != null) {
+                sessionAttributes.put(SESSION_ATTRIBUTE, identity);
+            }
+        }
+        return identity;
+    }
+
+    public static SessionIdentity resolve(Principal principal) {
+        if (principal == null) {
+            return null;
+        }
+        Object user = principal instanceof Authentication authentication ? authentication.getPrincipal() : principal;
+        String username = null;
+        if (user instanceof OAuth2User oauth2User) {
+            username = oauth2User.getAttribute("preferred_username");
+        }
+        if (!StringUtils.hasText(username)) {
+            username = principal.getName();
+        }
+        if (!StringUtils.hasText(username)) {
+            return null;
+        }
+        Set<String> roles = principal instanceof Authentication authentication
+                ? authentication.getAuthorities().stream()
+                        .map(GrantedAuthority::getAuthority)
+                        .filter(authority -> authority.startsWith("ROLE_"))
+                        .map(authority -> authority.substring("ROLE_".length()))
+                        .collect(Collectors.toUnmodifiableSet())
+                : Set.of();
+        return new SessionIdentity(username, roles);
+    }
+}
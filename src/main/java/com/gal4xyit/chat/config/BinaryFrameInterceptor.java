@@ -0,0 +1,151 @@
+package com.gal4xyit.chat.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.ContentTypeResolver;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Opt-in CBOR bodies for outbound MESSAGE frames. A client asks for them per subscription by sending
+ * {@code content-type:application/cbor} on SUBSCRIBE; the session must be a raw WebSocket (SockJS only carries text),
+ * otherwise the subscription silently stays JSON. Registered on both client channels: inbound to track subscriptions,
+ * outbound to transcode. Broadcasts are serialized to JSON once and the broker hands every subscriber the same payload
+ * array, so the transcoded copy is cached by identity and each broadcast is transcoded once, not once per subscriber.
+ */
+@Slf4j
+public class BinaryFrameInterceptor implements ChannelInterceptor {
+
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+    public static final String BINARY_CAPABLE_ATTRIBUTE = "binaryFrames";
+
+    private static final int CACHE_SLOTS = 64;
+
+    private final ContentTypeResolver contentTypeResolver = new DefaultContentTypeResolver();
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final CBORFactory cborFactory = new CBORFactory();
+    private final Map<String, Set<String>> cborSubscriptions = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<Transcoded> cache = new AtomicReferenceArray<>(CACHE_SLOTS);
+    private final Counter transcoded;
+    private final Counter reused;
+
+    public BinaryFrameInterceptor(MeterRegistry meterRegistry) {
+        this.transcoded = Counter.builder("chat.stomp.cbor.frames").tag("result", "transcoded")
+                .description("Outbound JSON payloads transcoded to CBOR")
+                .register(meterRegistry);
+        this.reused = Counter.builder("chat.stomp.cbor.frames").tag("result", "reused")
+                .description("Outbound CBOR frames that reused the transcoding of the same broadcast payload")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(headers);
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (type == null || sessionId == null) {
+            return message;
+        }
+        return switch (type) {
+            case SUBSCRIBE -> {
+                subscribed(message, sessionId);
+                yield message;
+            }
+            case UNSUBSCRIBE -> {
+                String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(headers);
+                cborSubscriptions.computeIfPresent(sessionId, (id, subscriptions) -> {
+                    subscriptions.remove(subscriptionId);
+                    return subscriptions.isEmpty() ? null : subscriptions;
+                });
+                yield message;
+            }
+            case DISCONNECT -> {
+                cborSubscriptions.remove(sessionId);
+                yield message;
+            }
+            case MESSAGE -> toCborIfRequested(message, sessionId);
+            default -> message;
+        };
+    }
+
+    private void subscribed(Message<?> message, String sessionId) {
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, SimpMessageHeaderAccessor.class);
+        if (accessor == null || accessor.getContentType() == null || !APPLICATION_CBOR.equalsTypeAndSubtype(accessor.getContentType())) {
+            return;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes == null || !Boolean.TRUE.equals(attributes.get(BINARY_CAPABLE_ATTRIBUTE))) {
+            log.debug("Session {} asked for CBOR on subscription {} but cannot carry binary frames, keeping JSON",
+                    sessionId, accessor.getSubscriptionId());
+            return;
+        }
+        cborSubscriptions.computeIfAbsent(sessionId, id -> ConcurrentHashMap.newKeySet()).add(accessor.getSubscriptionId());
+    }
+
+    private Message<?> toCborIfRequested(Message<?> message, String sessionId) {
+        Set<String> subscriptions = cborSubscriptions.get(sessionId);
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        if (subscriptions == null || subscriptionId == null || !subscriptions.contains(subscriptionId)
+                || !(message.getPayload() instanceof byte[] json) || json.length == 0) {
+            return message;
+        }
+        MimeType contentType = contentTypeResolver.resolve(message.getHeaders());
+        if (contentType != null && !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType)) {
+            return message;
+        }
+        byte[] cbor;
+        try {
+            cbor = transcode(json);
+        } catch (IOException e) {
+            log.warn("Could not transcode a frame for session {} to CBOR, sending JSON: {}", sessionId, e.getMessage());
+            return message;
+        }
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+        accessor.setContentType(APPLICATION_CBOR);
+        return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+    }
+
+    byte[] transcode(byte[] json) throws IOException {
+        int slot = System.identityHashCode(json) & (CACHE_SLOTS - 1);
+        Transcoded cached = cache.get(slot);
+        if (cached != null && cached.json() == json) {
+            reused.increment();
+            return cached.cbor();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = jsonFactory.createParser(json);
+             JsonGenerator generator = cborFactory.createGenerator(out)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+        byte[] cbor = out.toByteArray();
+        cache.set(slot, new Transcoded(json, cbor));
+        transcoded.increment();
+        return cbor;
+    }
+
+    private record Transcoded(byte[] json, byte[] cbor) {
+    }
+}
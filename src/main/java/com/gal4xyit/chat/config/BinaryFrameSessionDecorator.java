@@ -0,0 +1,64 @@
+package com.gal4xyit.chat.config;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Spring's STOMP handler only sends binary WebSocket frames for application/octet-stream bodies; everything else goes
+ * out as a TextMessage. TextMessage keeps the encoded bytes it was built from, so frames carrying a CBOR body are
+ * re-wrapped here, losslessly, as binary frames.
+ */
+public class BinaryFrameSessionDecorator extends WebSocketSessionDecorator {
+
+    private static final int HEADER_SCAN_LIMIT = 1024;
+    private static final byte[] CBOR_CONTENT_TYPE =
+            ("\ncontent-type:" + BinaryFrameInterceptor.APPLICATION_CBOR + "\n").getBytes(StandardCharsets.US_ASCII);
+
+    public BinaryFrameSessionDecorator(WebSocketSession delegate) {
+        super(delegate);
+        delegate.getAttributes().put(BinaryFrameInterceptor.BINARY_CAPABLE_ATTRIBUTE, Boolean.TRUE);
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (message instanceof TextMessage text) {
+            byte[] frame = text.asBytes();
+            if (hasCborBody(frame)) {
+                super.sendMessage(new BinaryMessage(frame));
+                return;
+            }
+        }
+        super.sendMessage(message);
+    }
+
+    static boolean hasCborBody(byte[] frame) {
+        int limit = Math.min(frame.length, HEADER_SCAN_LIMIT);
+        for (int i = 0; i < limit; i++) {
+            if (frame[i] == '\n' && i + 1 < limit && frame[i + 1] == '\n') {
+                return false;
+            }
+            if (regionMatches(frame, i, limit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionMatches(byte[] frame, int offset, int limit) {
+        if (offset + CBOR_CONTENT_TYPE.length > limit) {
+            return false;
+        }
+        for (int j = 0; j < CBOR_CONTENT_TYPE.length; j++) {
+            if (frame[offset + j] != CBOR_CONTENT_TYPE[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package com.gal4xyit.chat.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class ChannelExecutors {
+
+    private ChannelExecutors() {
+    }
+
+    // Not initialized here: the executor becomes the client*ChannelExecutor bean, which Spring initializes and shuts down.
+    static Executor create(String channel, ChatProperties.Channels channels, MeterRegistry meterRegistry) {
+        ChatProperties.ChannelExecutor properties = "inbound".equals(channel) ? channels.getInbound() : channels.getOutbound();
+        String threadNamePrefix = "chat-" + channel + "-";
+
+        if (channels.isVirtualThreads()) {
+            AtomicInteger active = new AtomicInteger();
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+            executor.setVirtualThreads(true);
+            // Virtual threads are cheap, but what they call into (JDBC pool, broker) is not, so concurrency stays bounded.
+            executor.setConcurrencyLimit(properties.getMaxPoolSize());
+            executor.setTaskDecorator(task -> () -> {
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                }
+            });
+            Gauge.builder("chat.stomp.channel.active", active, AtomicInteger::get)
+                    .tag("channel", channel)
+                    .description("Tasks currently running on the STOMP channel executor")
+                    .register(meterRegistry);
+            Gauge.builder("chat.stomp.channel.queue.size", () -> 0)
+                    .tag("channel", channel)
+                    .description("Tasks waiting for a STOMP channel thread (always 0 with virtual threads)")
+                    .register(meterRegistry);
+            return executor;
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(properties.getCorePoolSize());
+        executor.setMaxPoolSize(properties.getMaxPoolSize());
+        executor.setQueueCapacity(properties.getQueueCapacity());
+        executor.setKeepAliveSeconds((int) properties.getKeepAlive().toSeconds());
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setRejectedExecutionHandler(rejectionHandler(properties.getRejectionPolicy()));
+
+        Gauge.builder("chat.stomp.channel.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .tag("channel", channel)
+                .description("Tasks currently running on the STOMP channel executor")
+                .register(meterRegistry);
+        Gauge.builder("chat.stomp.channel.queue.size", executor, ThreadPoolTaskExecutor::getQueueSize)
+                .tag("channel", channel)
+                .description("Tasks waiting for a STOMP channel thread")
+                .register(meterRegistry);
+        Gauge.builder("chat.stomp.channel.pool.size", executor, ThreadPoolTaskExecutor::getPoolSize)
+                .tag("channel", channel)
+                .description("Threads currently in the STOMP channel pool")
+                .register(meterRegistry);
+        return executor;
+    }
+
+    private static RejectedExecutionHandler rejectionHandler(ChatProperties.ChannelExecutor.RejectionPolicy policy) {
+        return switch (policy) {
+            case ABORT -> new ThreadPoolExecutor.AbortPolicy();
+            case CALLER_RUNS -> new ThreadPoolExecutor.CallerRunsPolicy();
+            case DISCARD -> new ThreadPoolExecutor.DiscardPolicy();
+            case DISCARD_OLDEST -> new ThreadPoolExecutor.DiscardOldestPolicy();
+        };
+    }
+}
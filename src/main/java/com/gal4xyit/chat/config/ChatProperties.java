@@ -0,0 +1,182 @@
+package com.gal4xyit.chat.config;
+
+import com.gal4xyit.chat.chat.SnowflakeIdGenerator;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "chat")
+public class ChatProperties implements InitializingBean {
+
+    private final Ids ids = new Ids();
+    private final WriteBehind writeBehind = new WriteBehind();
+    private final History history = new History();
+    private final Partitions partitions = new Partitions();
+    private final Export export = new Export();
+    private final Presence presence = new Presence();
+    private final Broker broker = new Broker();
+    private final Channels channels = new Channels();
+    private final Transport transport = new Transport();
+    private final RateLimit rateLimit = new RateLimit();
+
+    // Several instances behind one broker: each node then sees only part of the traffic that passes through it.
+    public boolean isMultiNode() {
+        return broker.isRelayEnabled() || presence.getStore() == Presence.Store.JDBC;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Integer nodeId = ids.getNodeId();
+        if (nodeId != null && (nodeId < 0 || nodeId > SnowflakeIdGenerator.MAX_NODE_ID)) {
+            throw new IllegalStateException("chat.ids.node-id must be between 0 and " + SnowflakeIdGenerator.MAX_NODE_ID
+                    + " but was " + nodeId);
+        }
+        // Two nodes on one id generate the same message ids and each deletes the other's presence rows on registration.
+        if (nodeId == null && isMultiNode()) {
+            throw new IllegalStateException("chat.ids.node-id (CHAT_NODE_ID) must be set to an id unique to this instance "
+                    + "when the broker relay or the JDBC presence store is enabled");
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Ids {
+        // Unset is only allowed for a single instance, which then runs as node 0.
+        private Integer nodeId;
+    }
+
+    @Getter
+    @Setter
+    public static class WriteBehind {
+        private int queueCapacity = 10_000;
+        private int batchSize = 200;
+        private Duration flushInterval = Duration.ofMillis(100);
+        private Duration offerTimeout = Duration.ofMillis(50);
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+    }
+
+    @Getter
+    @Setter
+    public static class History {
+        private int cacheCapacity = 1000;
+        private int cachedRooms = 100;
+    }
+
+    @Getter
+    @Setter
+    public static class Partitions {
+        private int monthsAhead = 3;
+        private Duration maintenanceInterval = Duration.ofHours(1);
+        // 0 keeps every month; otherwise months older than this many are exported to the archive directory and dropped.
+        private int retentionMonths = 0;
+        private String archiveDir = "archive";
+    }
+
+    @Getter
+    @Setter
+    public static class Export {
+        private int fetchSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    public static class Presence {
+        private Duration debounceWindow = Duration.ofMillis(150);
+        private Store store = Store.LOCAL;
+        private Duration heartbeatInterval = Duration.ofSeconds(5);
+        private Duration nodeTimeout = Duration.ofSeconds(20);
+        private int eventLogQueueCapacity = 1000;
+
+        public enum Store {
+            LOCAL,
+            JDBC
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Broker {
+        private boolean relayEnabled = false;
+        private String relayHost = "localhost";
+        private int relayPort = 61613;
+        private String clientLogin = "guest";
+        private String clientPasscode = "guest";
+        private String systemLogin = "guest";
+        private String systemPasscode = "guest";
+        private String virtualHost;
+    }
+
+    @Getter
+    @Setter
+    public static class Channels {
+        private boolean virtualThreads = false;
+        private final ChannelExecutor inbound = new ChannelExecutor();
+        private final ChannelExecutor outbound = new ChannelExecutor();
+    }
+
+    @Getter
+    @Setter
+    public static class ChannelExecutor {
+        private int corePoolSize = Runtime.getRuntime().availableProcessors() * 2;
+        private int maxPoolSize = 64;
+        private int queueCapacity = 10_000;
+        private Duration keepAlive = Duration.ofSeconds(60);
+        private RejectionPolicy rejectionPolicy = RejectionPolicy.CALLER_RUNS;
+
+        public enum RejectionPolicy {
+            ABORT,
+            CALLER_RUNS,
+            DISCARD,
+            DISCARD_OLDEST
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Transport {
+        private Duration sendTimeLimit = Duration.ofSeconds(10);
+        private int sendBufferSizeLimit = 512 * 1024;
+        private int messageSizeLimit = 64 * 1024;
+        private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_PRESENCE;
+        private boolean binaryFrames = true;
+
+        public enum SlowConsumerPolicy {
+            DISCONNECT,
+            DROP_PRESENCE,
+            SNAPSHOT
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class RateLimit {
+        private boolean enabled = true;
+        private final Bucket user = new Bucket(20, 10);
+        private final Bucket session = new Bucket(10, 5);
+
+        @Getter
+        @Setter
+        public static class Bucket {
+            private int burst;
+            private double perSecond;
+
+            public Bucket(int burst, double perSecond) {
+                this.burst = burst;
+                this.perSecond = perSecond;
+            }
+
+            // A zero or negative rate would turn into an infinite or negative refill interval in TokenBucket.
+            public void setPerSecond(double perSecond) {
+                if (!(perSecond > 0)) {
+                    throw new IllegalArgumentException("per-second must be greater than 0 but was " + perSecond);
+                }
+                this.perSecond = perSecond;
+            }
+        }
+    }
+}
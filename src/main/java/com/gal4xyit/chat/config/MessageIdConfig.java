@@ -0,0 +1,23 @@
+package com.gal4xyit.chat.config;
+
+import com.gal4xyit.chat.chat.MessageIds;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class MessageIdConfig implements InitializingBean {
+
+    private final ChatProperties chatProperties;
+
+    @Override
+    public void afterPropertiesSet() {
+        Integer configured = chatProperties.getIds().getNodeId();
+        int nodeId = configured != null ? configured : 0;
+        MessageIds.useNode(nodeId);
+        log.info("Generating chat message ids as node {}", nodeId);
+    }
+}
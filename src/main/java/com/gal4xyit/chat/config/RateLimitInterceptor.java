@@ -0,0 +1,168 @@
+package com.gal4xyit.chat.config;
+
+import com.gal4xyit.chat.chat.SessionIdentity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+@Slf4j
+public class RateLimitInterceptor implements ChannelInterceptor {
+
+    public static final String ERROR_QUEUE = "/queue/errors";
+    private static final String LIMITED_PREFIX = "/app/chat.send";
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public record RateLimitError(String error, String scope, String destination, long retryAfterMillis) {
+    }
+
+    private final ChatProperties.RateLimit properties;
+    // Resolved lazily: the messaging template is built from the same broker configuration that registers this interceptor.
+    private final ObjectProvider<SimpMessageSendingOperations> messagingTemplate;
+    private final LongSupplier nanoClock;
+    private final Map<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> sessionBuckets = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep;
+    private final Counter userThrottled;
+    private final Counter sessionThrottled;
+
+    public RateLimitInterceptor(ChatProperties.RateLimit properties,
+                                ObjectProvider<SimpMessageSendingOperations> messagingTemplate,
+                                MeterRegistry meterRegistry) {
+        this(properties, messagingTemplate, meterRegistry, System::nanoTime);
+    }
+
+    RateLimitInterceptor(ChatProperties.RateLimit properties,
+                         ObjectProvider<SimpMessageSendingOperations> messagingTemplate,
+                         MeterRegistry meterRegistry,
+                         LongSupplier nanoClock) {
+        this.properties = properties;
+        this.messagingTemplate = messagingTemplate;
+        this.nanoClock = nanoClock;
+        this.lastSweep = new AtomicLong(nanoClock.getAsLong());
+        this.userThrottled = Counter.builder("chat.ratelimit.throttled").tag("scope", "user")
+                .description("Inbound chat frames rejected because the user's token bucket was empty")
+                .register(meterRegistry);
+        this.sessionThrottled = Counter.builder("chat.ratelimit.throttled").tag("scope", "session")
+                .description("Inbound chat frames rejected because the session's token bucket was empty")
+                .register(meterRegistry);
+        Gauge.builder("chat.ratelimit.buckets", userBuckets, Map::size).tag("scope", "user")
+                .description("Per-user token buckets currently held in memory")
+                .register(meterRegistry);
+        Gauge.builder("chat.ratelimit.buckets", sessionBuckets, Map::size).tag("scope", "session")
+                .description("Per-session token buckets currently held in memory")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null) {
+            return message;
+        }
+        if (accessor.getCommand() == StompCommand.DISCONNECT) {
+            release(accessor);
+            return message;
+        }
+        String destination = accessor.getDestination();
+        String sessionId = accessor.getSessionId();
+        if (accessor.getCommand() != StompCommand.SEND || sessionId == null
+                || destination == null || !destination.startsWith(LIMITED_PREFIX)) {
+            return message;
+        }
+        SessionIdentity identity = SessionIdentity.of(accessor);
+        if (identity == null) {
+            return message;
+        }
+
+        long now = nanoClock.getAsLong();
+        sweepIfDue(now);
+        TokenBucket session = sessionBuckets.computeIfAbsent(sessionId, key -> newBucket(properties.getSession(), now));
+        TokenBucket user = userBuckets.computeIfAbsent(identity.username(), key -> newBucket(properties.getUser(), now));
+
+        // Both are checked before either is charged, so a frame refused by the user bucket does not cost a session token.
+        long sessionWait = session.waitNanos(now);
+        long userWait = sessionWait > 0 ? 0 : user.waitNanos(now);
+        if (sessionWait == 0 && userWait == 0) {
+            sessionWait = session.tryAcquire(now);
+            if (sessionWait == 0) {
+                userWait = user.tryAcquire(now);
+                if (userWait > 0) {
+                    // Another session of the same user took the last token in between.
+                    session.refund();
+                }
+            }
+        }
+        if (sessionWait > 0) {
+            sessionThrottled.increment();
+            reject(identity.username(), sessionId, "session", destination, sessionWait);
+            return null;
+        }
+        if (userWait > 0) {
+            userThrottled.increment();
+            reject(identity.username(), sessionId, "user", destination, userWait);
+            return null;
+        }
+        return message;
+    }
+
+    // DISCONNECT only drops a user's bucket once it has refilled, so users who left while throttled are swept here instead.
+    private void sweepIfDue(long now) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        // A frame racing the removal charges a bucket that is already gone, which at worst hands that user one extra token.
+        userBuckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    private void release(StompHeaderAccessor accessor) {
+        String sessionId = accessor.getSessionId();
+        if (sessionId != null) {
+            sessionBuckets.remove(sessionId);
+        }
+        SessionIdentity identity = accessor.getSessionAttributes() != null
+                ? (SessionIdentity) accessor.getSessionAttributes().get(SessionIdentity.SESSION_ATTRIBUTE)
+                : null;
+        if (identity != null) {
+            // A full bucket is indistinguishable from a fresh one, so dropping it loses nothing even if other sessions remain.
+            long now = nanoClock.getAsLong();
+            userBuckets.computeIfPresent(identity.username(), (user, bucket) -> bucket.isFull(now) ? null : bucket);
+        }
+    }
+
+    private void reject(String username, String sessionId, String scope, String destination, long waitNanos) {
+        long retryAfterMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        log.debug("Throttled {} from session {} of user {} ({} limit), retry in {} ms",
+                destination, sessionId, username, scope, retryAfterMillis);
+        SimpMessageSendingOperations template = messagingTemplate.getIfAvailable();
+        if (template == null) {
+            return;
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        template.convertAndSendToUser(username, ERROR_QUEUE,
+                new RateLimitError("rate_limited", scope, destination, retryAfterMillis), headers.getMessageHeaders());
+    }
+
+    private static TokenBucket newBucket(ChatProperties.RateLimit.Bucket bucket, long now) {
+        return new TokenBucket(bucket.getBurst(), bucket.getPerSecond(), now);
+    }
+}
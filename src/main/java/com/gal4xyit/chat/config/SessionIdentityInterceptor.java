@@ -0,0 +1,31 @@
+package com.gal4xyit.chat.config;
+
+import com.gal4xyit.chat.chat.SessionIdentity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+
+import java.util.Map;
+
+@Slf4j
+public class SessionIdentityInterceptor implements ChannelInterceptor {
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() != StompCommand.CONNECT) {
+            return message;
+        }
+        Map<String, Object> sessionAttributes = accessor.getSessionAttributes();
+        SessionIdentity identity = SessionIdentity.resolve(accessor.getUser());
+        if (sessionAttributes != null && identity != null) {
+            sessionAttributes.put(SessionIdentity.SESSION_ATTRIBUTE, identity);
+            log.debug("Session {} connected as {} with roles {}", accessor.getSessionId(), identity.username(), identity.roles());
+        }
+        return message;
+    }
+}
@@ -0,0 +1,253 @@
+package com.gal4xyit.chat.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffers outbound frames and writes them on a per-session virtual thread, so {@link #sendMessage} never blocks.
+ * That matters because Spring wraps this session in its own ConcurrentWebSocketSessionDecorator: if we blocked, the
+ * backlog would pile up in that outer buffer where no policy applies. When our buffer overflows we apply a
+ * {@link ChatProperties.Transport.SlowConsumerPolicy}. Presence frames are the only ones ever dropped: clients recover
+ * them by resyncing on the next version gap (or, with SNAPSHOT, from the roster pushed once they catch up), whereas a
+ * dropped chat message would be silently lost.
+ */
+@Slf4j
+public class SlowConsumerSessionDecorator extends WebSocketSessionDecorator {
+
+    private static final int HEADER_SCAN_LIMIT = 256;
+
+    private final int sendTimeLimit;
+    private final int bufferSizeLimit;
+    private final ChatProperties.Transport.SlowConsumerPolicy policy;
+    private final Counters counters;
+    private final PresenceResync presenceResync;
+
+    private final ConcurrentLinkedDeque<WebSocketMessage<?>> buffer = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger bufferSize = new AtomicInteger();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final ReentrantLock closeLock = new ReentrantLock();
+    // Subscription id to presence topic of every subscription that lost deltas while presence was suppressed.
+    private final ConcurrentHashMap<String, String> staleSubscriptions = new ConcurrentHashMap<>();
+
+    private volatile long sendStartTime;
+    private volatile boolean suppressPresence;
+    private volatile boolean closing;
+
+    public SlowConsumerSessionDecorator(WebSocketSession delegate, int sendTimeLimit, int bufferSizeLimit,
+                                        ChatProperties.Transport.SlowConsumerPolicy policy, Counters counters,
+                                        PresenceResync presenceResync) {
+        super(delegate);
+        this.sendTimeLimit = sendTimeLimit;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.policy = policy;
+        this.counters = counters;
+        this.presenceResync = presenceResync;
+    }
+
+    public int getBufferSize() {
+        return bufferSize.get();
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        if (closing) {
+            return;
+        }
+        if (suppressPresence && isPresenceFrame(message)) {
+            dropped(message);
+            return;
+        }
+        buffer.add(message);
+        bufferSize.addAndGet(message.getPayloadLength());
+
+        if (flushing.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("chat-ws-send-" + getId()).start(this::flushMessageBuffer);
+        } else {
+            checkSessionLimits();
+        }
+    }
+
+    private void flushMessageBuffer() {
+        do {
+            try {
+                WebSocketMessage<?> message;
+                while (!closing && (message = buffer.poll()) != null) {
+                    bufferSize.addAndGet(-message.getPayloadLength());
+                    // Before the write, so whatever the client sees after a drained backlog is already unsuppressed.
+                    liftSuppressionIfCaughtUp();
+                    sendStartTime = System.currentTimeMillis();
+                    getDelegate().sendMessage(message);
+                    sendStartTime = 0;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("Failed to send to WebSocket session {}, closing it", getId(), e);
+                closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+            } finally {
+                sendStartTime = 0;
+                flushing.set(false);
+            }
+            liftSuppressionIfCaughtUp();
+            // A producer may have added a frame after our last poll but before we cleared the flag.
+        } while (!closing && !buffer.isEmpty() && flushing.compareAndSet(false, true));
+    }
+
+    private void liftSuppressionIfCaughtUp() {
+        if (suppressPresence && bufferSize.get() < bufferSizeLimit / 2) {
+            // Caught up: push the current roster rather than wait for a delta that may be a long time coming.
+            suppressPresence = false;
+            for (String subscriptionId : staleSubscriptions.keySet()) {
+                String destination = staleSubscriptions.remove(subscriptionId);
+                if (destination != null) {
+                    presenceResync.resync(getId(), subscriptionId, destination);
+                }
+            }
+        }
+    }
+
+    private void checkSessionLimits() {
+        if (closing || !closeLock.tryLock()) {
+            return;
+        }
+        try {
+            long start = sendStartTime;
+            if (start > 0 && System.currentTimeMillis() - start > sendTimeLimit) {
+                disconnect("send time " + (System.currentTimeMillis() - start) + " ms exceeded " + sendTimeLimit + " ms");
+                return;
+            }
+            if (bufferSize.get() <= bufferSizeLimit) {
+                return;
+            }
+            switch (policy) {
+                case DISCONNECT -> disconnect("buffer size " + bufferSize.get() + " exceeded " + bufferSizeLimit);
+                case DROP_PRESENCE -> dropPresenceFrames(false);
+                case SNAPSHOT -> {
+                    suppressPresence = true;
+                    dropPresenceFrames(true);
+                }
+            }
+            if (!closing && bufferSize.get() > bufferSizeLimit) {
+                disconnect("buffer size " + bufferSize.get() + " still exceeds " + bufferSizeLimit + " with only chat frames left");
+            }
+        } finally {
+            closeLock.unlock();
+        }
+    }
+
+    private void dropPresenceFrames(boolean all) {
+        Iterator<WebSocketMessage<?>> oldestFirst = buffer.iterator();
+        while (oldestFirst.hasNext() && (all || bufferSize.get() > bufferSizeLimit)) {
+            WebSocketMessage<?> message = oldestFirst.next();
+            // remove(Object) rather than the iterator, so a frame the flusher already took is never counted twice.
+            if (isPresenceFrame(message) && buffer.removeFirstOccurrence(message)) {
+                bufferSize.addAndGet(-message.getPayloadLength());
+                dropped(message);
+            }
+        }
+    }
+
+    private void dropped(WebSocketMessage<?> message) {
+        counters.dropped().increment();
+        if (policy == ChatProperties.Transport.SlowConsumerPolicy.SNAPSHOT) {
+            String headers = headersOf(message);
+            String subscriptionId = headerOf(headers, "subscription");
+            if (subscriptionId != null) {
+                staleSubscriptions.put(subscriptionId, headerOf(headers, "destination"));
+            }
+        }
+    }
+
+    private void disconnect(String reason) {
+        closing = true;
+        counters.disconnected().increment();
+        log.warn("Closing slow WebSocket session {}: {}", getId(), reason);
+        closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private void closeQuietly(CloseStatus status) {
+        closing = true;
+        buffer.clear();
+        bufferSize.set(0);
+        try {
+            getDelegate().close(status);
+        } catch (IOException e) {
+            log.debug("Failed to close WebSocket session {}", getId(), e);
+        }
+    }
+
+    static boolean isPresenceFrame(WebSocketMessage<?> message) {
+        String headers = headersOf(message);
+        if (!headers.startsWith("MESSAGE\n")) {
+            return false;
+        }
+        String destination = headerOf(headers, "destination");
+        return destination != null && destination.endsWith(".presence");
+    }
+
+    private static String headersOf(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage text) {
+            String payload = text.getPayload();
+            return payload.substring(0, Math.min(payload.length(), HEADER_SCAN_LIMIT));
+        } else if (message instanceof BinaryMessage binary) {
+            ByteBuffer payload = binary.getPayload().duplicate();
+            byte[] head = new byte[Math.min(payload.remaining(), HEADER_SCAN_LIMIT)];
+            payload.get(head);
+            return new String(head, StandardCharsets.US_ASCII);
+        }
+        return "";
+    }
+
+    private static String headerOf(String headers, String name) {
+        int start = headers.indexOf("\n" + name + ":");
+        int body = headers.indexOf("\n\n");
+        if (start < 0 || (body >= 0 && start > body)) {
+            return null;
+        }
+        int end = headers.indexOf('\n', start + 1);
+        return headers.substring(start + name.length() + 2, end < 0 ? headers.length() : end);
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        closing = true;
+        super.close(status);
+    }
+
+    // Sends the current roster of a presence topic to one subscription of one session, bypassing the broker.
+    @FunctionalInterface
+    public interface PresenceResync {
+        void resync(String sessionId, String subscriptionId, String destination);
+    }
+
+    public record Counters(Counter dropped, Counter disconnected) {
+
+        public static Counters register(MeterRegistry meterRegistry, ChatProperties.Transport.SlowConsumerPolicy policy) {
+            String tag = policy.name().toLowerCase();
+            return new Counters(
+                    Counter.builder("chat.websocket.slow.consumer.dropped")
+                            .tag("policy", tag)
+                            .description("Presence frames dropped for clients that could not keep up")
+                            .register(meterRegistry),
+                    Counter.builder("chat.websocket.slow.consumer.disconnected")
+                            .tag("policy", tag)
+                            .description("Sessions closed for exceeding the send time or send buffer limit")
+                            .register(meterRegistry));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.gal4xyit.chat.config;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token bucket kept as a single "theoretical arrival time" (GCRA), so taking a token is one CAS and no lock.
+final class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival;
+
+    TokenBucket(int burst, double tokensPerSecond, long nowNanos) {
+        this.nanosPerToken = (long) (1_000_000_000L / tokensPerSecond);
+        this.burstNanos = nanosPerToken * burst;
+        this.theoreticalArrival = new AtomicLong(nowNanos);
+    }
+
+    // Returns 0 when a token was taken, otherwise the nanos until one is available.
+    long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, nowNanos) + nanosPerToken;
+            long overshoot = next - nowNanos - burstNanos;
+            if (overshoot > 0) {
+                return overshoot;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // Returns 0 when a token is available right now, otherwise the nanos until one is, without taking it.
+    long waitNanos(long nowNanos) {
+        long next = Math.max(theoreticalArrival.get(), nowNanos) + nanosPerToken;
+        return Math.max(0, next - nowNanos - burstNanos);
+    }
+
+    // Gives back a token taken by tryAcquire. Refunding past a full bucket is harmless: tryAcquire clamps to now.
+    void refund() {
+        theoreticalArrival.addAndGet(-nanosPerToken);
+    }
+
+    boolean isFull(long nowNanos) {
+        return theoreticalArrival.get() - nowNanos <= 0;
+    }
+}
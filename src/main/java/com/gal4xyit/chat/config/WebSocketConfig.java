@@ -1,18 +1,122 @@
 package com.gal4xyit.chat.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.util.StringUtils;
+import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
+@RequiredArgsConstructor
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+
+    private final ChatProperties chatProperties;
+    private final MeterRegistry meterRegistry;
+    private final ObjectProvider<SimpMessageSendingOperations> messagingTemplate;
+    private final ObjectProvider<SlowConsumerSessionDecorator.PresenceResync> presenceResync;
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new SessionIdentityInterceptor());
+        if (chatProperties.getRateLimit().isEnabled()) {
+            registration.interceptors(new RateLimitInterceptor(chatProperties.getRateLimit(), messagingTemplate, meterRegistry));
+        }
+        if (chatProperties.getTransport().isBinaryFrames()) {
+            registration.interceptors(binaryFrameInterceptor());
+        }
+        registration.executor(ChannelExecutors.create("inbound", chatProperties.getChannels(), meterRegistry));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        if (chatProperties.getTransport().isBinaryFrames()) {
+            registration.interceptors(binaryFrameInterceptor());
+        }
+        registration.executor(ChannelExecutors.create("outbound", chatProperties.getChannels(), meterRegistry));
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        if (chatProperties.getTransport().isBinaryFrames()) {
+            // Only for SEND frames that declare content-type:application/cbor; JSON stays the default.
+            MappingJackson2MessageConverter cbor = new MappingJackson2MessageConverter(
+                    Jackson2ObjectMapperBuilder.cbor().build(), BinaryFrameInterceptor.APPLICATION_CBOR);
+            cbor.setStrictContentTypeMatch(true);
+            messageConverters.add(cbor);
+        }
+        return true;
+    }
+
+    @Bean
+    public BinaryFrameInterceptor binaryFrameInterceptor() {
+        return new BinaryFrameInterceptor(meterRegistry);
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
         registry.setApplicationDestinationPrefixes("/app");
-        registry.enableSimpleBroker("/topic");
+        registry.setUserDestinationPrefix("/user");
+        ChatProperties.Broker broker = chatProperties.getBroker();
+        if (broker.isRelayEnabled()) {
+            var relay = registry.enableStompBrokerRelay("/topic", "/queue")
+                    // Lets each node resolve /user destinations for sessions on other nodes. Dotted, so no room topic can collide.
+                    .setUserDestinationBroadcast("/topic/simp.unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/simp.user-registry")
+                    .setRelayHost(broker.getRelayHost())
+                    .setRelayPort(broker.getRelayPort())
+                    .setClientLogin(broker.getClientLogin())
+                    .setClientPasscode(broker.getClientPasscode())
+                    .setSystemLogin(broker.getSystemLogin())
+                    .setSystemPasscode(broker.getSystemPasscode());
+            if (StringUtils.hasText(broker.getVirtualHost())) {
+                relay.setVirtualHost(broker.getVirtualHost());
+            }
+        } else {
+            registry.enableSimpleBroker("/topic", "/queue");
+        }
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        ChatProperties.Transport transport = chatProperties.getTransport();
+        int sendTimeLimit = (int) transport.getSendTimeLimit().toMillis();
+        SlowConsumerSessionDecorator.Counters counters =
+                SlowConsumerSessionDecorator.Counters.register(meterRegistry, transport.getSlowConsumerPolicy());
+        // Resolved per call: the sender needs the outbound channel, which is built from this very configurer.
+        SlowConsumerSessionDecorator.PresenceResync resync = (sessionId, subscriptionId, destination) ->
+                presenceResync.ifAvailable(sender -> sender.resync(sessionId, subscriptionId, destination));
+
+        registration.setMessageSizeLimit(transport.getMessageSizeLimit());
+        registration.setSendTimeLimit(sendTimeLimit);
+        registration.setSendBufferSizeLimit(transport.getSendBufferSizeLimit());
+        registration.addDecoratorFactory(handler -> new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                // SockJS sessions only carry text, so only raw WebSocket sessions may opt in to binary bodies.
+                WebSocketSession transportSession = transport.isBinaryFrames() && !(session instanceof SockJsSession)
+                        ? new BinaryFrameSessionDecorator(session)
+                        : session;
+                super.afterConnectionEstablished(new SlowConsumerSessionDecorator(transportSession, sendTimeLimit,
+                        transport.getSendBufferSizeLimit(), transport.getSlowConsumerPolicy(), counters, resync));
+            }
+        });
     }
 
     @Override
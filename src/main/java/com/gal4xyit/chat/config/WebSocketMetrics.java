@@ -0,0 +1,91 @@
+package com.gal4xyit.chat.config;
+
+import com.gal4xyit.chat.chat.ConnectedUsersService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+@Component
+@RequiredArgsConstructor
+public class WebSocketMetrics implements MeterBinder {
+
+    private final ConnectedUsersService connectedUsersService;
+    private final WebSocketMessageBrokerStats brokerStats;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("chat.presence.sessions", connectedUsersService, ConnectedUsersService::getRoomSessionCount)
+                .description("Sessions joined to a room, counted once per room")
+                .register(registry);
+        Gauge.builder("chat.presence.users", connectedUsersService, ConnectedUsersService::getOnlineUserCount)
+                .description("Distinct users online in at least one room on this node")
+                .register(registry);
+        Gauge.builder("chat.presence.rooms", connectedUsersService, ConnectedUsersService::getRoomCount)
+                .description("Rooms with at least one user on this node")
+                .register(registry);
+
+        sessionGauge(registry, "websocket", SubProtocolWebSocketHandler.Stats::getWebSocketSessions);
+        sessionGauge(registry, "http_streaming", SubProtocolWebSocketHandler.Stats::getHttpStreamingSessions);
+        sessionGauge(registry, "http_polling", SubProtocolWebSocketHandler.Stats::getHttpPollingSessions);
+        sessionCounter(registry, "limit_exceeded", SubProtocolWebSocketHandler.Stats::getLimitExceededSessions);
+        sessionCounter(registry, "no_messages_received", SubProtocolWebSocketHandler.Stats::getNoMessagesReceivedSessions);
+        sessionCounter(registry, "transport_error", SubProtocolWebSocketHandler.Stats::getTransportErrorSessions);
+
+        stompCounter(registry, "connect", StompSubProtocolHandler.Stats::getTotalConnect);
+        stompCounter(registry, "connected", StompSubProtocolHandler.Stats::getTotalConnected);
+        stompCounter(registry, "disconnect", StompSubProtocolHandler.Stats::getTotalDisconnect);
+
+        Gauge.builder("chat.stomp.relay.handlers", brokerStats,
+                        relayStat(StompBrokerRelayMessageHandler.Stats::getTotalHandlers))
+                .description("Open TCP connections to the STOMP broker relay, including the system connection")
+                .register(registry);
+    }
+
+    private void sessionGauge(MeterRegistry registry, String transport, ToIntFunction<SubProtocolWebSocketHandler.Stats> stat) {
+        Gauge.builder("chat.websocket.sessions", brokerStats, sessionStat(stat))
+                .tag("transport", transport)
+                .description("Open WebSocket and SockJS sessions")
+                .register(registry);
+    }
+
+    private void sessionCounter(MeterRegistry registry, String reason, ToIntFunction<SubProtocolWebSocketHandler.Stats> stat) {
+        FunctionCounter.builder("chat.websocket.sessions.closed", brokerStats, sessionStat(stat))
+                .tag("reason", reason)
+                .description("Sessions closed abnormally since startup")
+                .register(registry);
+    }
+
+    private void stompCounter(MeterRegistry registry, String command, ToIntFunction<StompSubProtocolHandler.Stats> stat) {
+        FunctionCounter.builder("chat.stomp.frames", brokerStats, stats -> {
+                    StompSubProtocolHandler.Stats stomp = stats.getStompSubProtocolStats();
+                    return stomp != null ? stat.applyAsInt(stomp) : 0;
+                })
+                .tag("command", command)
+                .description("STOMP session lifecycle frames handled since startup")
+                .register(registry);
+    }
+
+    private static ToDoubleFunction<WebSocketMessageBrokerStats> sessionStat(ToIntFunction<SubProtocolWebSocketHandler.Stats> stat) {
+        return stats -> {
+            SubProtocolWebSocketHandler.Stats sessions = stats.getWebSocketSessionStats();
+            return sessions != null ? stat.applyAsInt(sessions) : 0;
+        };
+    }
+
+    private static ToDoubleFunction<WebSocketMessageBrokerStats> relayStat(ToIntFunction<StompBrokerRelayMessageHandler.Stats> stat) {
+        return stats -> {
+            StompBrokerRelayMessageHandler.Stats relay = stats.getStompBrokerRelayStats();
+            return relay != null ? stat.applyAsInt(relay) : 0;
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package com.gal4xyit.chat.controller;
+
+import com.gal4xyit.chat.chat.ChatMessageExporter;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/admin/messages")
+@RequiredArgsConstructor
+public class AdminMessageExportController {
+
+    private final ChatMessageExporter chatMessageExporter;
+
+    @Operation(summary = "Stream every chat message in id order as NDJSON or CSV, optionally gzipped",
+            security = @SecurityRequirement(name = "oauth2_keycloak_implicit_flow"))
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Export streamed as an attachment"),
+            @ApiResponse(responseCode = "400", description = "Empty time range"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "403", description = "Forbidden - User does not have ADMIN role")
+    })
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportMessages(
+            @Parameter(description = "Output format")
+            @RequestParam(defaultValue = "NDJSON") ChatMessageExporter.Format format,
+            @Parameter(description = "Only messages sent at or after this time")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Only messages sent before this time")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @Parameter(description = "Gzip the file")
+            @RequestParam(defaultValue = "false") boolean gzip
+    ) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            return ResponseEntity.badRequest().build();
+        }
+        String filename = "chat-messages." + format.extension() + (gzip ? ".gz" : "");
+        StreamingResponseBody body = out -> {
+            long rows;
+            if (gzip) {
+                try (OutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024)) {
+                    rows = chatMessageExporter.export(format, from, to, gzipOut);
+                }
+            } else {
+                rows = chatMessageExporter.export(format, from, to, out);
+            }
+            log.info("Exported {} chat messages as {} (from {}, to {})", rows, filename, from, to);
+        };
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : format.contentType()))
+                .body(body);
+    }
+}
@@ -1,42 +1,208 @@
 package com.gal4xyit.chat.controller;
 
-import com.gal4xyit.chat.chat.ChatMessage;
-import com.gal4xyit.chat.chat.ChatMessageRepository;
+import com.gal4xyit.chat.chat.ChatRooms;
+import com.gal4xyit.chat.chat.EncodedHistoryPage;
+import com.gal4xyit.chat.chat.MessageHistoryPage;
+import com.gal4xyit.chat.chat.MessageHistoryService;
+import com.gal4xyit.chat.chat.MessageSearchPage;
+import com.gal4xyit.chat.chat.MessageSearchQuery;
+import com.gal4xyit.chat.chat.MessageSearchService;
+import com.gal4xyit.chat.chat.MessageType;
+import com.gal4xyit.chat.chat.PresenceEventLog;
+import com.gal4xyit.chat.chat.PresenceEventPage;
 import io.swagger.v3.oas.annotations.Operation;
-import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.Collections;
-import java.util.List;
+import java.time.LocalDateTime;
 
 @RestController
 @RequestMapping("/api/messages")
 @RequiredArgsConstructor
 public class MessageRestController {
 
-    private final ChatMessageRepository chatMessageRepository;
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 500;
 
-    @Operation(summary = "Get chat message history",
+    static final int DEFAULT_SEARCH_PAGE_SIZE = 20;
+    static final int MAX_SEARCH_QUERY_LENGTH = 256;
+
+    private final MessageHistoryService messageHistoryService;
+    private final MessageSearchService messageSearchService;
+    private final PresenceEventLog presenceEventLog;
+
+    @Operation(summary = "Get chat message history, newest page first, paged backwards by cursor",
             security = @SecurityRequirement(name = "oauth2_keycloak_implicit_flow"))
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved message history",
                     content = @Content(mediaType = "application/json",
-                            array = @ArraySchema(schema = @Schema(implementation = ChatMessage.class)))),
+                            schema = @Schema(implementation = MessageHistoryPage.class))),
+            @ApiResponse(responseCode = "304", description = "History unchanged since the ETag sent in If-None-Match"),
+            @ApiResponse(responseCode = "400", description = "Invalid room name"),
             @ApiResponse(responseCode = "401", description = "Unauthorized")
     })
     @GetMapping("/history")
-    public ResponseEntity<List<ChatMessage>> getMessageHistory() {
-        List<ChatMessage> recentMessages = chatMessageRepository.findTop100ByOrderByTimestampDesc();
-        Collections.reverse(recentMessages);
-        return ResponseEntity.ok(recentMessages);
+    public ResponseEntity<byte[]> getMessageHistory(
+            @Parameter(description = "Room to read the history of")
+            @RequestParam(defaultValue = ChatRooms.DEFAULT_ROOM) String room,
+            @Parameter(description = "Return only messages older than this cursor (the nextCursor of the previous page)")
+            @RequestParam(required = false) Long before,
+            @Parameter(description = "Page size, at most " + MAX_PAGE_SIZE)
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        if (!ChatRooms.isValid(room)) {
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        EncodedHistoryPage page = messageHistoryService.encodedPage(room, before, pageSize);
+
+        return historyResponse(page, acceptEncoding);
+    }
+
+    @Operation(summary = "Get the direct message history between the current user and a peer, paged backwards by cursor",
+            security = @SecurityRequirement(name = "oauth2_keycloak_implicit_flow"))
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved the conversation",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = MessageHistoryPage.class))),
+            @ApiResponse(responseCode = "304", description = "Conversation unchanged since the ETag sent in If-None-Match"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    @GetMapping("/direct/{peer}/history")
+    public ResponseEntity<byte[]> getDirectMessageHistory(
+            @Parameter(description = "Username of the other participant")
+            @PathVariable String peer,
+            @Parameter(description = "Return only messages older than this cursor (the nextCursor of the previous page)")
+            @RequestParam(required = false) Long before,
+            @Parameter(description = "Page size, at most " + MAX_PAGE_SIZE)
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            Authentication authentication
+    ) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        EncodedHistoryPage page = messageHistoryService.encodedDirectPage(usernameOf(authentication), peer, before, pageSize);
+        return historyResponse(page, acceptEncoding);
+    }
+
+    @Operation(summary = "Full-text search over chat messages, best match first, paged by cursor",
+            security = @SecurityRequirement(name = "oauth2_keycloak_implicit_flow"))
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Matching messages the current user can read",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = MessageSearchPage.class))),
+            @ApiResponse(responseCode = "400", description = "Empty or too long query, invalid room or malformed cursor"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    @GetMapping("/search")
+    public ResponseEntity<MessageSearchPage> searchMessages(
+            @Parameter(description = "Search terms; quoted phrases, OR and -excluded words are supported")
+            @RequestParam String q,
+            @Parameter(description = "Only messages of this room")
+            @RequestParam(required = false) String room,
+            @Parameter(description = "Only messages sent by this user")
+            @RequestParam(required = false) String sender,
+            @Parameter(description = "Only messages of this type")
+            @RequestParam(required = false) MessageType type,
+            @Parameter(description = "Only messages sent at or after this time")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Only messages sent before this time")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @Parameter(description = "Continue after this cursor (the nextCursor of the previous page)")
+            @RequestParam(required = false) String after,
+            @Parameter(description = "Page size, at most " + MAX_PAGE_SIZE)
+            @RequestParam(defaultValue = "" + DEFAULT_SEARCH_PAGE_SIZE) int limit,
+            Authentication authentication
+    ) {
+        if (!StringUtils.hasText(q) || q.length() > MAX_SEARCH_QUERY_LENGTH || (room != null && !ChatRooms.isValid(room))) {
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        MessageSearchQuery query;
+        try {
+            query = new MessageSearchQuery(usernameOf(authentication), q, room, sender, type, from, to, null, null, pageSize)
+                    .after(after);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(messageSearchService.search(query));
+    }
+
+    @Operation(summary = "Get the join/leave events of a room, newest first, paged backwards by cursor",
+            security = @SecurityRequirement(name = "oauth2_keycloak_implicit_flow"))
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved presence events",
+                    content = @Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PresenceEventPage.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid room name"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+    })
+    @GetMapping("/presence")
+    public ResponseEntity<PresenceEventPage> getPresenceEvents(
+            @Parameter(description = "Room to read the presence events of")
+            @RequestParam(defaultValue = ChatRooms.DEFAULT_ROOM) String room,
+            @Parameter(description = "Return only events older than this cursor (the nextCursor of the previous page)")
+            @RequestParam(required = false) Long before,
+            @Parameter(description = "Page size, at most " + MAX_PAGE_SIZE)
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit
+    ) {
+        if (!ChatRooms.isValid(room)) {
+            return ResponseEntity.badRequest().build();
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noStore())
+                .body(presenceEventLog.page(room, before, pageSize));
+    }
+
+    private static ResponseEntity<byte[]> historyResponse(EncodedHistoryPage page, String acceptEncoding) {
+        // A matching If-None-Match is answered with 304 by Spring once the ETag header is set.
+        boolean gzip = page.gzip() != null && acceptsGzip(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(gzip ? page.gzipEtag() : page.etag())
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .contentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(page.gzip());
+        }
+        return response.body(page.json());
+    }
+
+    // Same name the STOMP side routes /user destinations by, for both browser logins and bearer tokens.
+    private static String usernameOf(Authentication authentication) {
+        String preferredUsername = null;
+        if (authentication.getPrincipal() instanceof OAuth2User oauth2User) {
+            preferredUsername = oauth2User.getAttribute("preferred_username");
+        } else if (authentication.getPrincipal() instanceof Jwt jwt) {
+            preferredUsername = jwt.getClaimAsString("preferred_username");
+        }
+        return StringUtils.hasText(preferredUsername) ? preferredUsername : authentication.getName();
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
     }
-}
\ No newline at end of file
+}
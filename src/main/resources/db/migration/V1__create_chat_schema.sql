@@ -0,0 +1,37 @@
+-- Creates the schema on an empty database and upgrades one that hibernate.ddl-auto=update created before migrations
+-- existed: that chat_messages has only id (IDENTITY), content, sender, type and timestamp, and none of the presence
+-- tables. Such databases are baselined at version 0, so this runs on them too and must stay idempotent.
+CREATE TABLE IF NOT EXISTS chat_messages (
+    id        BIGINT       NOT NULL PRIMARY KEY,
+    room      VARCHAR(64)  NOT NULL DEFAULT 'public',
+    content   TEXT,
+    sender    VARCHAR(255) NOT NULL,
+    recipient VARCHAR(255),
+    type      VARCHAR(255) NOT NULL CHECK (type IN ('CHAT', 'JOIN', 'LEAVE')),
+    timestamp TIMESTAMP(6) NOT NULL
+);
+
+ALTER TABLE chat_messages ADD COLUMN IF NOT EXISTS room VARCHAR(64) NOT NULL DEFAULT 'public';
+ALTER TABLE chat_messages ADD COLUMN IF NOT EXISTS recipient VARCHAR(255);
+
+CREATE INDEX IF NOT EXISTS idx_chat_messages_room_id ON chat_messages (room, id);
+CREATE INDEX IF NOT EXISTS idx_chat_messages_direct ON chat_messages (sender, recipient, id);
+
+CREATE TABLE IF NOT EXISTS presence_rooms (
+    room           VARCHAR(64) NOT NULL PRIMARY KEY,
+    roster_version BIGINT      NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS presence_nodes (
+    node_id        INTEGER      NOT NULL PRIMARY KEY,
+    last_heartbeat TIMESTAMP(6) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS presence_room_entries (
+    node_id  INTEGER      NOT NULL,
+    room     VARCHAR(64)  NOT NULL,
+    username VARCHAR(255) NOT NULL,
+    PRIMARY KEY (node_id, room, username)
+);
+
+CREATE INDEX IF NOT EXISTS idx_presence_room_entries_room_username ON presence_room_entries (room, username);
@@ -0,0 +1,5 @@
+-- Newest-first scans by time, e.g. "latest N messages", read the index backwards instead of sorting the table.
+CREATE INDEX IF NOT EXISTS idx_chat_messages_timestamp_id ON chat_messages (timestamp DESC, id DESC);
+
+-- findByTypeOrderByTimestampAsc(CHAT): presence rows are left out of the index entirely.
+CREATE INDEX IF NOT EXISTS idx_chat_messages_chat_timestamp ON chat_messages (timestamp, id) WHERE type = 'CHAT';
@@ -0,0 +1,6 @@
+-- IF NOT EXISTS: databases that ran search before migrations existed already have the column and index.
+-- Kept up to date by Postgres on every insert; 'simple' because messages are written in several languages.
+ALTER TABLE chat_messages ADD COLUMN IF NOT EXISTS content_tsv tsvector
+    GENERATED ALWAYS AS (to_tsvector('simple', coalesce(content, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_chat_messages_content_tsv ON chat_messages USING GIN (content_tsv);
@@ -0,0 +1,47 @@
+-- chat_messages becomes range-partitioned by month on its Snowflake id rather than on timestamp: every history query
+-- is a keyset on id, so the planner prunes and orders partitions from the id bounds alone.
+-- The first id of a month is (epoch millis - 2024-01-01T00:00Z millis) << 22, see SnowflakeIdGenerator.firstIdAt.
+CREATE TABLE chat_messages_partitioned (
+    id          BIGINT       NOT NULL,
+    room        VARCHAR(64)  NOT NULL DEFAULT 'public',
+    content     TEXT,
+    sender      VARCHAR(255) NOT NULL,
+    recipient   VARCHAR(255),
+    type        VARCHAR(255) NOT NULL CHECK (type IN ('CHAT', 'JOIN', 'LEAVE')),
+    timestamp   TIMESTAMP(6) NOT NULL,
+    content_tsv tsvector GENERATED ALWAYS AS (to_tsvector('simple', coalesce(content, ''))) STORED,
+    CONSTRAINT chat_messages_partitioned_pkey PRIMARY KEY (id)
+) PARTITION BY RANGE (id);
+
+-- One partition per UTC month from the oldest stored message up to three months ahead; ChatMessagePartitions
+-- keeps creating them from there. The first one also holds any pre-Snowflake IDENTITY ids, hence MINVALUE.
+DO $$
+DECLARE
+    oldest_id   BIGINT    := greatest(coalesce((SELECT min(id) FROM chat_messages), 0), 0);
+    month_start TIMESTAMP := date_trunc('month', to_timestamp((1704067200000 + (oldest_id >> 22)) / 1000.0) AT TIME ZONE 'UTC');
+    last_month  TIMESTAMP := date_trunc('month', now() AT TIME ZONE 'UTC') + INTERVAL '3 months';
+    lower_bound TEXT      := 'MINVALUE';
+    upper_id    BIGINT;
+BEGIN
+    WHILE month_start <= last_month LOOP
+        upper_id := ((extract(EPOCH FROM month_start + INTERVAL '1 month') * 1000)::BIGINT - 1704067200000) << 22;
+        EXECUTE format('CREATE TABLE %I PARTITION OF chat_messages_partitioned FOR VALUES FROM (%s) TO (%s)',
+                       'chat_messages_p' || to_char(month_start, 'YYYY_MM'), lower_bound, upper_id);
+        lower_bound := upper_id::TEXT;
+        month_start := month_start + INTERVAL '1 month';
+    END LOOP;
+END $$;
+
+INSERT INTO chat_messages_partitioned (id, room, content, sender, recipient, type, timestamp)
+SELECT id, room, content, sender, recipient, type, timestamp FROM chat_messages;
+
+DROP TABLE chat_messages;
+ALTER TABLE chat_messages_partitioned RENAME TO chat_messages;
+ALTER TABLE chat_messages RENAME CONSTRAINT chat_messages_partitioned_pkey TO chat_messages_pkey;
+
+-- Created on the parent, so every current and future partition gets its own copy.
+CREATE INDEX idx_chat_messages_room_id ON chat_messages (room, id);
+CREATE INDEX idx_chat_messages_direct ON chat_messages (sender, recipient, id);
+CREATE INDEX idx_chat_messages_timestamp_id ON chat_messages (timestamp DESC, id DESC);
+CREATE INDEX idx_chat_messages_chat_timestamp ON chat_messages (timestamp, id) WHERE type = 'CHAT';
+CREATE INDEX idx_chat_messages_content_tsv ON chat_messages USING GIN (content_tsv);
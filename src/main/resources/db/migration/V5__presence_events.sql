@@ -0,0 +1,19 @@
+-- Join/leave transitions move out of chat_messages into their own narrow log: history pages and the partial CHAT
+-- index no longer carry presence churn, and a transition costs one short row instead of a message with text.
+CREATE TABLE IF NOT EXISTS presence_events (
+    id        BIGINT       NOT NULL PRIMARY KEY,
+    room      VARCHAR(64)  NOT NULL,
+    username  VARCHAR(255) NOT NULL,
+    joined    BOOLEAN      NOT NULL,
+    timestamp TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_presence_events_room_id ON presence_events (room, id);
+
+INSERT INTO presence_events (id, room, username, joined, timestamp)
+SELECT id, room, sender, type = 'JOIN', timestamp
+FROM chat_messages
+WHERE type IN ('JOIN', 'LEAVE')
+ON CONFLICT (id) DO NOTHING;
+
+DELETE FROM chat_messages WHERE type IN ('JOIN', 'LEAVE');
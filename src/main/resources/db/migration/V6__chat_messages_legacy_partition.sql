@@ -0,0 +1,23 @@
+-- V4 named its MINVALUE partition after the month of the oldest id. While chat_messages still had IDENTITY ids those
+-- all decode to January 2024 (id >> 22 is 0), so every pre-Snowflake row landed in chat_messages_p2024_01 whatever its
+-- timestamp, and retention by partition name would drop recent messages with it. That partition is renamed here and
+-- ChatMessagePartitions expires it by its newest timestamp instead. Without such rows the name is right and kept.
+DO $$
+DECLARE
+    first_partition TEXT;
+    month_end       TIMESTAMP;
+    has_legacy_rows BOOLEAN;
+BEGIN
+    SELECT c.relname INTO first_partition
+    FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+    WHERE i.inhparent = 'chat_messages'::regclass AND pg_get_expr(c.relpartbound, c.oid) LIKE '%MINVALUE%';
+    IF first_partition IS NULL OR first_partition !~ '^chat_messages_p\d{4}_\d{2}$' THEN
+        RETURN;
+    END IF;
+
+    month_end := to_date(right(first_partition, 7), 'YYYY_MM') + INTERVAL '1 month';
+    EXECUTE format('SELECT EXISTS (SELECT 1 FROM %I WHERE timestamp >= %L)', first_partition, month_end) INTO has_legacy_rows;
+    IF has_legacy_rows THEN
+        EXECUTE format('ALTER TABLE %I RENAME TO chat_messages_legacy', first_partition);
+    END IF;
+END $$;
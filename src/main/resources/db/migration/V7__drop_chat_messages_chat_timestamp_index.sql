@@ -0,0 +1,4 @@
+-- Only findByTypeOrderByTimestampAsc read this index, and only tests call it: every production query on chat_messages
+-- is keyed on id, and idx_chat_messages_timestamp_id already covers a scan by time. Dropped on the parent, which drops
+-- each partition's copy with it.
+DROP INDEX IF EXISTS idx_chat_messages_chat_timestamp;
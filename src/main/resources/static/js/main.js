@@ -8,11 +8,22 @@ var connectingElement = document.querySelector('.connecting');
 var connectedUsersList = document.querySelector('#connectedUsersList');
 var userCountElement = document.querySelector('#user-count');
 var authControls = document.querySelector('#auth-controls');
+var roomNameElement = document.querySelector('#room-name');
 
 var stompClient = null;
 var username = null;
 var idToken = null;
 var isAuthenticated = false;
+var room = roomFromLocation();
+
+var historyCursor = null;
+var historyHasMore = false;
+var loadingOlderHistory = false;
+
+var roster = new Set();
+var rosterVersion = null;
+var pendingPresenceUpdates = [];
+var presenceSnapshotSubscription = null;
 
 var colors = [
     '#2196F3', '#32c787', '#00BCD4', '#ff5652',
@@ -98,6 +109,12 @@ function updateAuthUI() {
     }
 }
 
+// The room comes from the URL fragment (#lobby), so switching rooms is just following a link.
+function roomFromLocation() {
+    var requested = decodeURIComponent(window.location.hash.replace(/^#/, '')).toLowerCase();
+    return /^[a-z0-9][a-z0-9_-]{0,63}$/.test(requested) ? requested : 'public';
+}
+
 function connectWebSocket() {
     if (username && isAuthenticated) {
         var socket = new SockJS('/ws');
@@ -112,13 +129,17 @@ function onConnected() {
     if (connectingElement) connectingElement.classList.add('hidden');
     if (!stompClient) return;
 
-    stompClient.subscribe('/topic/public', onMessageReceived);
+    stompClient.subscribe('/topic/' + room, onMessageReceived);
+    stompClient.subscribe('/topic/' + room + '.presence', onPresenceUpdate);
+    stompClient.subscribe('/user/queue/direct', onMessageReceived);
+    stompClient.subscribe('/user/queue/errors', onServerError);
+    requestPresenceSnapshot();
 
     loadMessageHistory().then(() => {
-        stompClient.send("/app/chat.addUser", {}, JSON.stringify({sender: username, type: 'JOIN'}));
+        stompClient.send("/app/chat.addUser/" + room, {}, JSON.stringify({sender: username, type: 'JOIN'}));
     }).catch(error => {
         console.error("Failed to load message history:", error);
-        stompClient.send("/app/chat.addUser", {}, JSON.stringify({sender: username, type: 'JOIN'}));
+        stompClient.send("/app/chat.addUser/" + room, {}, JSON.stringify({sender: username, type: 'JOIN'}));
     });
 }
 
@@ -129,11 +150,13 @@ async function loadMessageHistory() {
     }
 
     try {
-        const response = await fetch('/api/messages/history');
+        const response = await fetch('/api/messages/history?room=' + encodeURIComponent(room));
         if (response.ok) {
-            const historyMessages = await response.json();
-            if (historyMessages && historyMessages.length > 0) {
-                historyMessages.forEach(message => {
+            const historyPage = await response.json();
+            historyCursor = historyPage.nextCursor;
+            historyHasMore = historyPage.hasMore;
+            if (historyPage.messages && historyPage.messages.length > 0) {
+                historyPage.messages.forEach(message => {
                     displayMessage(message, true);
                 });
                 messageArea.scrollTop = messageArea.scrollHeight;
@@ -150,30 +173,44 @@ async function loadMessageHistory() {
     }
 }
 
-function displayMessage(message, isHistory = false) {
-    if (!messageArea) return;
+async function loadOlderMessages() {
+    if (!messageArea || !historyHasMore || loadingOlderHistory) return;
+    loadingOlderHistory = true;
 
-    var messageElement = document.createElement('li');
-    var appendMessageToArea = true;
-
-    if (message.type === 'JOIN') {
-        if (message.content && message.content.length > 0) {
-            messageElement.classList.add('event-message');
-            var p = document.createElement('p');
-            p.textContent = message.content;
-            messageElement.appendChild(p);
+    try {
+        const response = await fetch('/api/messages/history?room=' + encodeURIComponent(room) + '&before=' + encodeURIComponent(historyCursor));
+        if (response.ok) {
+            const historyPage = await response.json();
+            var previousScrollHeight = messageArea.scrollHeight;
+            var firstElement = messageArea.firstChild;
+            historyPage.messages.forEach(message => {
+                var messageElement = createMessageElement(message);
+                if (messageElement) messageArea.insertBefore(messageElement, firstElement);
+            });
+            messageArea.scrollTop += messageArea.scrollHeight - previousScrollHeight;
+            historyCursor = historyPage.nextCursor;
+            historyHasMore = historyPage.hasMore;
         } else {
-            appendMessageToArea = false;
+            console.error("Error fetching older messages, status:", response.status);
         }
-    } else if (message.type === 'LEAVE') {
-        if (message.content && message.content.length > 0) {
-            messageElement.classList.add('event-message');
-            var p = document.createElement('p');
-            p.textContent = message.content;
-            messageElement.appendChild(p);
-        } else {
-            appendMessageToArea = false;
+    } catch (error) {
+        console.error("Network error fetching older messages:", error);
+    } finally {
+        loadingOlderHistory = false;
+    }
+}
+
+function createMessageElement(message) {
+    var messageElement = document.createElement('li');
+
+    if (message.type === 'JOIN' || message.type === 'LEAVE' || message.type === 'NOTICE') {
+        if (!message.content || message.content.length === 0) {
+            return null;
         }
+        messageElement.classList.add('event-message');
+        var p = document.createElement('p');
+        p.textContent = message.content;
+        messageElement.appendChild(p);
     } else if (message.type === 'CHAT') {
         messageElement.classList.add('chat-message');
         var avatarElement = document.createElement('i');
@@ -185,7 +222,9 @@ function displayMessage(message, isHistory = false) {
         var textContentWrapper = document.createElement('div');
         textContentWrapper.classList.add('chat-message-text-content');
         var usernameElement = document.createElement('span');
-        var usernameText = document.createTextNode(message.sender);
+        var usernameText = document.createTextNode(message.recipient
+            ? message.sender + ' \u2192 ' + message.recipient + ' (direct)'
+            : message.sender);
         usernameElement.appendChild(usernameText);
         textContentWrapper.appendChild(usernameElement);
 
@@ -195,16 +234,73 @@ function displayMessage(message, isHistory = false) {
         textContentWrapper.appendChild(textElement);
         messageElement.appendChild(textContentWrapper);
     } else {
-        appendMessageToArea = false;
+        return null;
     }
 
-    if (appendMessageToArea && messageElement.hasChildNodes()) {
+    return messageElement.hasChildNodes() ? messageElement : null;
+}
+
+function displayMessage(message, isHistory = false) {
+    if (!messageArea) return;
+
+    var messageElement = createMessageElement(message);
+    if (messageElement) {
         messageArea.appendChild(messageElement);
     }
+}
+
+function requestPresenceSnapshot() {
+    if (!stompClient) return;
+    rosterVersion = null;
+    if (presenceSnapshotSubscription) presenceSnapshotSubscription.unsubscribe();
+    presenceSnapshotSubscription = stompClient.subscribe('/app/presence/' + room, onPresenceSnapshot);
+}
+
+function onPresenceSnapshot(payload) {
+    var snapshot = JSON.parse(payload.body);
+    if (presenceSnapshotSubscription) {
+        presenceSnapshotSubscription.unsubscribe();
+        presenceSnapshotSubscription = null;
+    }
+    roster = new Set(snapshot.users);
+    rosterVersion = snapshot.version;
+
+    var buffered = pendingPresenceUpdates;
+    pendingPresenceUpdates = [];
+    buffered.sort((a, b) => a.version - b.version).forEach(applyPresenceUpdate);
+    updateConnectedUsers(Array.from(roster));
+}
+
+function onPresenceUpdate(payload) {
+    var update = JSON.parse(payload.body);
+    if (update.users) {
+        // A full roster pushed by the server after it had to drop deltas for this client.
+        onPresenceSnapshot(payload);
+        return;
+    }
+    update.joined.forEach(user => displayMessage({type: 'JOIN', sender: user, content: user + ' joined!'}));
+    update.left.forEach(user => displayMessage({type: 'LEAVE', sender: user, content: user + ' left!'}));
+    if (messageArea) messageArea.scrollTop = messageArea.scrollHeight;
 
-    if (!isHistory && message.connectedUsers && (message.type === 'JOIN' || message.type === 'LEAVE')) {
-        updateConnectedUsers(message.connectedUsers);
+    if (rosterVersion === null) {
+        pendingPresenceUpdates.push(update);
+        return;
     }
+    applyPresenceUpdate(update);
+    updateConnectedUsers(Array.from(roster));
+}
+
+function applyPresenceUpdate(update) {
+    if (rosterVersion === null || update.version <= rosterVersion) return;
+    if (update.version !== rosterVersion + 1) {
+        console.warn("Presence version gap (have " + rosterVersion + ", got " + update.version + "), resyncing.");
+        pendingPresenceUpdates.push(update);
+        requestPresenceSnapshot();
+        return;
+    }
+    update.joined.forEach(user => roster.add(user));
+    update.left.forEach(user => roster.delete(user));
+    rosterVersion = update.version;
 }
 
 function onMessageReceived(payload) {
@@ -215,6 +311,14 @@ function onMessageReceived(payload) {
 }
 
 
+function onServerError(payload) {
+    var error = JSON.parse(payload.body);
+    if (error.error === 'rate_limited') {
+        displayMessage({type: 'NOTICE', content: 'You are sending messages too fast. Try again in ' + Math.ceil(error.retryAfterMillis / 1000) + 's.'});
+        if (messageArea) messageArea.scrollTop = messageArea.scrollHeight;
+    }
+}
+
 function onError(error) {
     if (connectingElement) {
         connectingElement.classList.remove('hidden');
@@ -237,8 +341,14 @@ function sendMessage(event) {
     if (!messageInput || !stompClient || !stompClient.connected || !isAuthenticated) return;
     var messageContent = messageInput.value.trim();
     if (messageContent) {
-        var chatMessage = { sender: username, content: messageInput.value, type: 'CHAT' };
-        stompClient.send("/app/chat.sendMessage", {}, JSON.stringify(chatMessage));
+        var direct = messageContent.match(/^\/w\s+(\S+)\s+([\s\S]+)$/);
+        if (direct) {
+            var directMessage = { content: direct[2], type: 'CHAT' };
+            stompClient.send("/app/chat.sendDirect/" + direct[1], {}, JSON.stringify(directMessage));
+        } else {
+            var chatMessage = { sender: username, content: messageInput.value, type: 'CHAT' };
+            stompClient.send("/app/chat.sendMessage/" + room, {}, JSON.stringify(chatMessage));
+        }
         messageInput.value = '';
     }
 }
@@ -252,6 +362,13 @@ function updateConnectedUsers(users) {
         users.forEach(user => {
             var userElement = document.createElement('li');
             userElement.innerHTML = (user === username) ? `<strong>${user} (You)</strong>` : user;
+            if (user !== username) {
+                userElement.title = 'Send a direct message';
+                userElement.addEventListener('click', () => {
+                    messageInput.value = '/w ' + user + ' ';
+                    messageInput.focus();
+                });
+            }
             connectedUsersList.appendChild(userElement);
         });
     } else {
@@ -279,7 +396,14 @@ document.addEventListener('DOMContentLoaded', () => {
         console.error("Critical UI elements for initialization missing.");
         return;
     }
+    if (roomNameElement) roomNameElement.textContent = '#' + room;
+    window.addEventListener('hashchange', () => window.location.reload());
     initializeApp();
+    if (messageArea) {
+        messageArea.addEventListener('scroll', () => {
+            if (messageArea.scrollTop === 0) loadOlderMessages();
+        });
+    }
     if (messageForm) {
         messageForm.addEventListener('submit', sendMessage, true);
     } else {
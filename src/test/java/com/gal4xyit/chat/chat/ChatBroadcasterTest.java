@@ -0,0 +1,47 @@
+package com.gal4xyit.chat.chat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatBroadcasterTest {
+
+    private final List<Message<?>> sent = new ArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ChatBroadcaster chatBroadcaster;
+
+    @BeforeEach
+    void setUp() {
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate((message, timeout) -> sent.add(message));
+        messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter());
+        chatBroadcaster = new ChatBroadcaster(messagingTemplate, meterRegistry);
+    }
+
+    @Test
+    void toUsers_shouldEncodeOnceAndShareThePayloadAcrossDestinations() throws Exception {
+        ChatMessage message = ChatMessage.builder().id(42L).sender("alice").recipient("bob/ops")
+                .content("hi").type(MessageType.CHAT).build();
+
+        chatBroadcaster.toUsers(List.of("bob/ops", "alice"), ChatRooms.DIRECT_QUEUE, message);
+
+        assertThat(sent).hasSize(2);
+        assertThat(SimpMessageHeaderAccessor.getDestination(sent.get(0).getHeaders())).isEqualTo("/user/bob%2Fops/queue/direct");
+        assertThat(SimpMessageHeaderAccessor.getDestination(sent.get(1).getHeaders())).isEqualTo("/user/alice/queue/direct");
+        assertThat(sent.get(1).getPayload()).isSameAs(sent.get(0).getPayload());
+        assertThat(sent.get(0).getHeaders().get(MessageHeaders.CONTENT_TYPE)).isEqualTo(MimeTypeUtils.APPLICATION_JSON);
+        assertThat(new ObjectMapper().readTree((byte[]) sent.get(0).getPayload()).get("content").asText()).isEqualTo("hi");
+        assertThat(meterRegistry.get("chat.broadcast.payload.size").summary().count()).isEqualTo(1);
+    }
+}
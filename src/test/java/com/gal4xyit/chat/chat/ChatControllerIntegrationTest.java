@@ -1,11 +1,13 @@
 package com.gal4xyit.chat.chat;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gal4xyit.chat.config.BinaryFrameInterceptor;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.web.server.LocalServerPort;
@@ -13,6 +15,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.CompositeMessageConverter;
 import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.stomp.*;
@@ -35,6 +39,8 @@ import org.springframework.web.socket.sockjs.client.SockJsClient;
 import org.springframework.web.socket.sockjs.client.Transport;
 import org.springframework.web.socket.sockjs.client.WebSocketTransport;
 
+import org.springframework.util.MimeType;
+
 import java.lang.reflect.Type;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -66,12 +72,22 @@ public class ChatControllerIntegrationTest {
     @Autowired
     private ChatMessageRepository chatMessageRepository;
 
+    @Autowired
+    private ChatMessageWriteBehind chatMessageWriteBehind;
+
+    @Autowired
+    private ConnectedUsersService connectedUsersService;
+
+    @Autowired
+    private PresenceAggregator presenceAggregator;
+
     @Autowired
     private ObjectMapper objectMapper;
 
     private static final String TEST_USERNAME_FOR_WEBSOCKET = "stompUser";
 
     private final BlockingQueue<ChatMessage> receivedMessages = new LinkedBlockingDeque<>();
+    private final BlockingQueue<PresenceUpdate> receivedPresenceUpdates = new LinkedBlockingDeque<>();
 
     @TestConfiguration
     static class OidcMockBeansConfiguration {
@@ -174,8 +190,18 @@ public class ChatControllerIntegrationTest {
                         }
                     }
                 });
+                session.subscribe(ChatRooms.presenceTopic(ChatRooms.DEFAULT_ROOM), new StompFrameHandler() {
+                    @Override
+                    public Type getPayloadType(StompHeaders headers) {
+                        return PresenceUpdate.class;
+                    }
+                    @Override
+                    public void handleFrame(StompHeaders headers, Object payload) {
+                        receivedPresenceUpdates.add((PresenceUpdate) payload);
+                    }
+                });
                 ChatMessage joinMessage = ChatMessage.builder().sender(TEST_USERNAME_FOR_WEBSOCKET).type(MessageType.JOIN).build();
-                session.send("/app/chat.addUser", joinMessage);
+                session.send("/app/chat.addUser/" + ChatRooms.DEFAULT_ROOM, joinMessage);
             }
             @Override
             public void handleException(StompSession session, StompCommand command, StompHeaders headers, byte[] payload, Throwable exception) {
@@ -193,22 +219,28 @@ public class ChatControllerIntegrationTest {
         assertNotNull(this.stompSession, "STOMP session should not be null after connect");
         assertThat(this.stompSession.isConnected()).isTrue();
 
-        ChatMessage initialJoinBroadcast = receivedMessages.poll(2, TimeUnit.SECONDS);
-        assertNotNull(initialJoinBroadcast, "Did not receive the broadcast from our own JOIN message within setUp");
-        assertThat(initialJoinBroadcast.getType()).isEqualTo(MessageType.JOIN);
-        assertThat(initialJoinBroadcast.getSender()).isEqualTo(TEST_USERNAME_FOR_WEBSOCKET);
+        PresenceUpdate initialJoinUpdate = receivedPresenceUpdates.poll(2, TimeUnit.SECONDS);
+        assertNotNull(initialJoinUpdate, "Did not receive the presence update for our own JOIN within setUp");
+        assertThat(initialJoinUpdate.joined()).containsExactly(TEST_USERNAME_FOR_WEBSOCKET);
 
         receivedMessages.clear();
+        receivedPresenceUpdates.clear();
     }
 
     @AfterEach
-    void tearDown() {
+    void tearDown() throws Exception {
         if (this.stompSession != null && this.stompSession.isConnected()) {
             this.stompSession.disconnect();
         }
         if (this.stompClient != null && this.stompClient.isRunning()) {
             this.stompClient.stop();
         }
+        // Let the LEAVE land before the next test joins, otherwise the two cancel out inside the debounce window.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (connectedUsersService.isUserOnline(ChatRooms.DEFAULT_ROOM, TEST_USERNAME_FOR_WEBSOCKET) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        presenceAggregator.flush();
     }
 
     @Test
@@ -220,7 +252,7 @@ public class ChatControllerIntegrationTest {
                 .type(MessageType.CHAT)
                 .build();
 
-        stompSession.send("/app/chat.sendMessage", messageToSend);
+        stompSession.send("/app/chat.sendMessage/" + ChatRooms.DEFAULT_ROOM, messageToSend);
 
         ChatMessage receivedBroadcast = receivedMessages.poll(5, TimeUnit.SECONDS);
         assertNotNull(receivedBroadcast, "Did not receive broadcast CHAT message on /topic/public");
@@ -228,8 +260,9 @@ public class ChatControllerIntegrationTest {
         assertThat(receivedBroadcast.getContent()).isEqualTo(messageContent);
         assertThat(receivedBroadcast.getSender()).isEqualTo(TEST_USERNAME_FOR_WEBSOCKET);
         assertNotNull(receivedBroadcast.getTimestamp(), "Broadcasted message should have a server-set timestamp");
-        assertNotNull(receivedBroadcast.getId(), "Broadcasted message should have a server-set ID after save");
+        assertNotNull(receivedBroadcast.getId(), "Broadcasted message should have a server-set ID before it is persisted");
 
+        chatMessageWriteBehind.flush();
         List<ChatMessage> savedChatMessages = chatMessageRepository.findByTypeOrderByTimestampAsc(MessageType.CHAT);
         assertThat(savedChatMessages).hasSize(1);
 
@@ -241,4 +274,149 @@ public class ChatControllerIntegrationTest {
         assertNotNull(savedDbMessage.getId());
         assertThat(savedDbMessage.getId()).isEqualTo(receivedBroadcast.getId());
     }
-}
\ No newline at end of file
+
+    @Test
+    void subscribeToPresence_shouldReplyWithRosterSnapshot() throws Exception {
+        BlockingQueue<PresenceSnapshot> snapshots = new LinkedBlockingDeque<>();
+        stompSession.subscribe("/app/presence/" + ChatRooms.DEFAULT_ROOM, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return PresenceSnapshot.class;
+            }
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                snapshots.add((PresenceSnapshot) payload);
+            }
+        });
+
+        PresenceSnapshot snapshot = snapshots.poll(5, TimeUnit.SECONDS);
+        assertNotNull(snapshot, "Did not receive a presence snapshot for the /app/presence/public subscription");
+        assertThat(snapshot.users()).contains(TEST_USERNAME_FOR_WEBSOCKET);
+        assertThat(snapshot.version()).isPositive();
+    }
+
+    @Test
+    void sendToRoom_shouldOnlyReachThatRoomAndRequireJoiningIt() throws Exception {
+        BlockingQueue<ChatMessage> lobbyMessages = new LinkedBlockingDeque<>();
+        BlockingQueue<PresenceUpdate> lobbyPresence = new LinkedBlockingDeque<>();
+        stompSession.subscribe(ChatRooms.messageTopic("lobby"), new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return ChatMessage.class;
+            }
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                lobbyMessages.add((ChatMessage) payload);
+            }
+        });
+        stompSession.subscribe(ChatRooms.presenceTopic("lobby"), new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return PresenceUpdate.class;
+            }
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                lobbyPresence.add((PresenceUpdate) payload);
+            }
+        });
+        ChatMessage message = ChatMessage.builder().content("Hello lobby").type(MessageType.CHAT).build();
+
+        stompSession.send("/app/chat.sendMessage/lobby", message);
+        assertThat(lobbyMessages.poll(500, TimeUnit.MILLISECONDS)).as("not joined yet").isNull();
+
+        stompSession.send("/app/chat.addUser/lobby", ChatMessage.builder().type(MessageType.JOIN).build());
+        PresenceUpdate joinedLobby = lobbyPresence.poll(5, TimeUnit.SECONDS);
+        assertNotNull(joinedLobby, "Did not receive the lobby presence update for our JOIN");
+        assertThat(joinedLobby.room()).isEqualTo("lobby");
+        stompSession.send("/app/chat.sendMessage/lobby", message);
+
+        ChatMessage received = lobbyMessages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(received, "Did not receive broadcast CHAT message on /topic/lobby");
+        assertThat(received.getRoom()).isEqualTo("lobby");
+        assertThat(receivedMessages.poll(500, TimeUnit.MILLISECONDS)).as("nothing leaks into the public room").isNull();
+        assertThat(receivedPresenceUpdates).isEmpty();
+    }
+
+    @Test
+    void sendDirect_shouldReachOnlyUserQueuesAndBePersistedWithRecipient() throws Exception {
+        BlockingQueue<ChatMessage> directMessages = new LinkedBlockingDeque<>();
+        stompSession.subscribe("/user" + ChatRooms.DIRECT_QUEUE, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return ChatMessage.class;
+            }
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                directMessages.add((ChatMessage) payload);
+            }
+        });
+        // SUBSCRIBE and SEND may be handled on different inbound threads, give the subscription a moment to register.
+        Thread.sleep(200);
+
+        stompSession.send("/app/chat.sendDirect/bob", ChatMessage.builder().content("Psst, bob").type(MessageType.CHAT).build());
+
+        ChatMessage echoed = directMessages.poll(5, TimeUnit.SECONDS);
+        assertNotNull(echoed, "Sender did not receive its own direct message on /user/queue/direct");
+        assertThat(echoed.getSender()).isEqualTo(TEST_USERNAME_FOR_WEBSOCKET);
+        assertThat(echoed.getRecipient()).isEqualTo("bob");
+        assertThat(receivedMessages.poll(500, TimeUnit.MILLISECONDS)).as("direct messages are not broadcast").isNull();
+
+        chatMessageWriteBehind.flush();
+        chatMessageRepository.saveAndFlush(ChatMessage.builder().room(ChatRooms.DIRECT).sender("bob")
+                .recipient(TEST_USERNAME_FOR_WEBSOCKET).content("Psst back").type(MessageType.CHAT).build());
+        assertThat(chatMessageRepository.findDirectViewsBefore("bob", TEST_USERNAME_FOR_WEBSOCKET, Long.MAX_VALUE, 10))
+                .extracting(ChatMessageView::content).containsExactly("Psst back", "Psst, bob");
+        assertThat(chatMessageRepository.findDirectViewsBefore(TEST_USERNAME_FOR_WEBSOCKET, "bob", Long.MAX_VALUE, 1))
+                .extracting(ChatMessageView::content).containsExactly("Psst back");
+        assertThat(chatMessageRepository.findViewsBefore(ChatRooms.DEFAULT_ROOM, Long.MAX_VALUE, Limit.of(10)))
+                .extracting(ChatMessageView::content).doesNotContain("Psst, bob");
+    }
+
+    @Test
+    void rawWebSocketClient_canOptInToCborFramesWhileOthersKeepJson() throws Exception {
+        MappingJackson2MessageConverter cborConverter = new MappingJackson2MessageConverter(
+                Jackson2ObjectMapperBuilder.cbor().build(), BinaryFrameInterceptor.APPLICATION_CBOR);
+        WebSocketStompClient rawClient = new WebSocketStompClient(new StandardWebSocketClient());
+        cborConverter.setStrictContentTypeMatch(true);
+        rawClient.setMessageConverter(new CompositeMessageConverter(List.of(cborConverter, new MappingJackson2MessageConverter())));
+        BlockingQueue<ChatMessage> cborMessages = new LinkedBlockingDeque<>();
+        BlockingQueue<MimeType> cborContentTypes = new LinkedBlockingDeque<>();
+
+        StompSession rawSession = rawClient.connectAsync("ws://localhost:" + port + "/ws/websocket",
+                new StompSessionHandlerAdapter() {}).get(10, TimeUnit.SECONDS);
+        try {
+            StompHeaders subscribe = new StompHeaders();
+            subscribe.setDestination(ChatRooms.messageTopic(ChatRooms.DEFAULT_ROOM));
+            subscribe.setContentType(BinaryFrameInterceptor.APPLICATION_CBOR);
+            rawSession.subscribe(subscribe, new StompFrameHandler() {
+                @Override
+                public Type getPayloadType(StompHeaders headers) {
+                    return ChatMessage.class;
+                }
+                @Override
+                public void handleFrame(StompHeaders headers, Object payload) {
+                    cborContentTypes.add(headers.getContentType());
+                    cborMessages.add((ChatMessage) payload);
+                }
+            });
+            rawSession.send("/app/chat.addUser/" + ChatRooms.DEFAULT_ROOM, ChatMessage.builder().type(MessageType.JOIN).build());
+            Thread.sleep(200);
+
+            rawSession.send("/app/chat.sendMessage/" + ChatRooms.DEFAULT_ROOM,
+                    ChatMessage.builder().content("Sent as CBOR").type(MessageType.CHAT).build());
+
+            ChatMessage asCbor = cborMessages.poll(5, TimeUnit.SECONDS);
+            assertNotNull(asCbor, "Raw WebSocket subscriber did not receive the CBOR frame");
+            assertThat(asCbor.getContent()).isEqualTo("Sent as CBOR");
+            assertThat(cborContentTypes.poll()).isEqualTo(BinaryFrameInterceptor.APPLICATION_CBOR);
+
+            ChatMessage asJson = receivedMessages.poll(5, TimeUnit.SECONDS);
+            assertNotNull(asJson, "SockJS subscriber did not receive the JSON frame");
+            assertThat(asJson.getContent()).isEqualTo("Sent as CBOR");
+            assertThat(asJson.getId()).isEqualTo(asCbor.getId());
+        } finally {
+            rawSession.disconnect();
+            rawClient.stop();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatMessagePartitionsTest {
+
+    @Test
+    void partitionName_shouldRoundTripThroughMonthOf() {
+        YearMonth month = YearMonth.of(2026, 3);
+
+        assertThat(ChatMessagePartitions.partitionName(month)).isEqualTo("chat_messages_p2026_03");
+        assertThat(ChatMessagePartitions.monthOf(ChatMessagePartitions.partitionName(month))).isEqualTo(month);
+    }
+
+    @Test
+    void monthOf_shouldIgnoreTablesThatAreNotMonthlyPartitions() {
+        assertThat(ChatMessagePartitions.monthOf("chat_messages")).isNull();
+        assertThat(ChatMessagePartitions.monthOf("chat_messages_partitioned")).isNull();
+        assertThat(ChatMessagePartitions.monthOf("chat_messages_p2026_03_old")).isNull();
+    }
+
+    @Test
+    void firstIdOf_shouldSeparateIdsOfAdjacentUtcMonths() {
+        Instant lastMillisOfMarch = Instant.parse("2026-03-31T23:59:59.999Z");
+        long lastIdOfMarch = new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID, lastMillisOfMarch::toEpochMilli).nextId();
+        long firstIdOfApril = new SnowflakeIdGenerator(0, () -> lastMillisOfMarch.toEpochMilli() + 1).nextId();
+
+        assertThat(ChatMessagePartitions.firstIdOf(YearMonth.of(2026, 3))).isLessThanOrEqualTo(lastIdOfMarch);
+        assertThat(ChatMessagePartitions.firstIdOf(YearMonth.of(2026, 4)))
+                .isGreaterThan(lastIdOfMarch)
+                .isEqualTo(firstIdOfApril);
+    }
+
+    @Test
+    void expireBefore_shouldOnlyDetachAndDropMonthsOlderThanTheOldestKept(@TempDir Path archiveDir) throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        ChatMessageExporter exporter = mock(ChatMessageExporter.class);
+        when(jdbcTemplate.queryForList(startsWith("SELECT c.relname"), eq(String.class)))
+                .thenReturn(List.of("chat_messages_p2026_01", "chat_messages_p2026_02"));
+        // p2026_05 was detached by hand and is newer than the retention window, so it must survive.
+        when(jdbcTemplate.queryForList(startsWith("SELECT relname"), eq(String.class)))
+                .thenReturn(List.of("chat_messages_p2026_01", "chat_messages_p2026_05"));
+
+        partitions(jdbcTemplate, exporter, archiveDir).expireBefore(YearMonth.of(2026, 2));
+
+        verify(jdbcTemplate).execute("ALTER TABLE chat_messages DETACH PARTITION chat_messages_p2026_01");
+        verify(jdbcTemplate, never()).execute("ALTER TABLE chat_messages DETACH PARTITION chat_messages_p2026_02");
+        verify(jdbcTemplate).execute("DROP TABLE chat_messages_p2026_01");
+        verify(jdbcTemplate, never()).execute("DROP TABLE chat_messages_p2026_05");
+        verify(exporter, never()).exportTable(eq("chat_messages_p2026_05"), any());
+        assertThat(archiveDir.resolve("chat_messages_p2026_01.ndjson.gz")).exists();
+    }
+
+    @Test
+    void expireBefore_shouldKeepTheLegacyPartitionUntilItsNewestMessageExpires(@TempDir Path archiveDir) {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForList(startsWith("SELECT c.relname"), eq(String.class)))
+                .thenReturn(List.of(ChatMessagePartitions.LEGACY_PARTITION, "chat_messages_p2026_03"));
+        when(jdbcTemplate.queryForObject("SELECT max(timestamp) FROM " + ChatMessagePartitions.LEGACY_PARTITION, Timestamp.class))
+                .thenReturn(Timestamp.valueOf(LocalDateTime.of(2026, 2, 14, 9, 30)));
+        ChatMessagePartitions partitions = partitions(jdbcTemplate, mock(ChatMessageExporter.class), archiveDir);
+
+        partitions.expireBefore(YearMonth.of(2026, 2));
+        verify(jdbcTemplate, never()).execute(anyString());
+
+        partitions.expireBefore(YearMonth.of(2026, 3));
+        verify(jdbcTemplate).execute("ALTER TABLE chat_messages DETACH PARTITION " + ChatMessagePartitions.LEGACY_PARTITION);
+    }
+
+    @Test
+    void maintain_whenAnotherNodeHoldsTheLock_shouldSkipTheRun(@TempDir Path archiveDir) throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        Connection connection = lockConnection(jdbcTemplate, false);
+
+        partitions(jdbcTemplate, mock(ChatMessageExporter.class), archiveDir).maintain();
+
+        verify(jdbcTemplate, never()).execute(anyString());
+        verify(connection, never()).prepareStatement("SELECT pg_advisory_unlock(?)");
+    }
+
+    @Test
+    void maintain_whenItGetsTheLock_shouldCreatePartitionsAheadAndReleaseIt(@TempDir Path archiveDir) throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        Connection connection = lockConnection(jdbcTemplate, true);
+        ChatProperties chatProperties = new ChatProperties();
+        chatProperties.getPartitions().setArchiveDir(archiveDir.toString());
+        chatProperties.getPartitions().setMonthsAhead(2);
+
+        new ChatMessagePartitions(jdbcTemplate, mock(ChatMessageExporter.class), chatProperties).maintain();
+
+        verify(jdbcTemplate, times(3)).execute(startsWith("CREATE TABLE IF NOT EXISTS chat_messages_p"));
+        verify(connection).prepareStatement("SELECT pg_advisory_unlock(?)");
+    }
+
+    // Runs the lock callback against a connection whose pg_try_advisory_lock returns the given result.
+    private static Connection lockConnection(JdbcTemplate jdbcTemplate, boolean acquired) throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getBoolean(1)).thenReturn(acquired);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> invocation.<ConnectionCallback<?>>getArgument(0).doInConnection(connection));
+        return connection;
+    }
+
+    private static ChatMessagePartitions partitions(JdbcTemplate jdbcTemplate, ChatMessageExporter exporter, Path archiveDir) {
+        ChatProperties chatProperties = new ChatProperties();
+        chatProperties.getPartitions().setArchiveDir(archiveDir.toString());
+        return new ChatMessagePartitions(jdbcTemplate, exporter, chatProperties);
+    }
+}
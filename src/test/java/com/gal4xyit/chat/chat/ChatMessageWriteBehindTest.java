@@ -0,0 +1,131 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatMessageWriteBehindTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private ChatProperties chatProperties;
+    private ChatMessageWriteBehind writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        chatProperties = new ChatProperties();
+        chatProperties.getWriteBehind().setBatchSize(10);
+        chatProperties.getWriteBehind().setFlushInterval(Duration.ofMillis(50));
+        writeBehind = new ChatMessageWriteBehind(jdbcTemplate, Mockito.mock(PlatformTransactionManager.class),
+                chatProperties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writeBehind.isRunning()) {
+            writeBehind.stop();
+        }
+    }
+
+    private static ChatMessage chat(String content) {
+        return ChatMessage.builder().sender("user1").content(content).type(MessageType.CHAT).build();
+    }
+
+    @Test
+    void enqueue_shouldAssignIdAndTimestampBeforePersisting() {
+        writeBehind.start();
+
+        ChatMessage accepted = writeBehind.enqueue(chat("hello"));
+
+        assertThat(accepted.getId()).isNotNull();
+        assertThat(accepted.getTimestamp()).isNotNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_shouldWriteQueuedMessagesInOneBatch() throws Exception {
+        writeBehind.start();
+
+        for (int i = 0; i < 5; i++) {
+            writeBehind.enqueue(chat("message " + i));
+        }
+        writeBehind.flush();
+
+        ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(eq(ChatMessageWriteBehind.INSERT_SQL), batches.capture(), any(int[].class));
+        assertThat(batches.getAllValues().stream().mapToInt(List::size).sum()).isEqualTo(5);
+        assertThat(batches.getAllValues()).hasSizeLessThan(5);
+        assertThat(meterRegistry.get("chat.persistence.flush").timer().count()).isEqualTo(batches.getAllValues().size());
+    }
+
+    @Test
+    void stop_shouldDrainPendingMessages() {
+        chatProperties.getWriteBehind().setFlushInterval(Duration.ofSeconds(5));
+        writeBehind.start();
+
+        writeBehind.enqueue(chat("one"));
+        writeBehind.enqueue(chat("two"));
+        writeBehind.stop();
+
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(eq(ChatMessageWriteBehind.INSERT_SQL), anyList(), any(int[].class));
+        assertThat(meterRegistry.get("chat.persistence.queue.size").gauge().value()).isZero();
+    }
+
+    @Test
+    void enqueue_whenNotRunning_shouldWriteOnCallerThread() {
+        writeBehind.enqueue(chat("inline"));
+
+        verify(jdbcTemplate, times(1)).batchUpdate(eq(ChatMessageWriteBehind.INSERT_SQL), anyList(), any(int[].class));
+        assertThat(meterRegistry.get("chat.persistence.inline.writes").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void enqueue_whenQueueIsFull_shouldApplyBackpressureByWritingOnCallerThread() {
+        CountDownLatch release = new CountDownLatch(1);
+        when(jdbcTemplate.batchUpdate(eq(ChatMessageWriteBehind.INSERT_SQL), anyList(), any(int[].class))).thenAnswer(invocation -> {
+            if (Thread.currentThread().getName().equals("chat-write-behind")) {
+                release.await();
+            }
+            return new int[0];
+        });
+        chatProperties.getWriteBehind().setQueueCapacity(1);
+        chatProperties.getWriteBehind().setBatchSize(1);
+        chatProperties.getWriteBehind().setOfferTimeout(Duration.ofMillis(1));
+        writeBehind = new ChatMessageWriteBehind(jdbcTemplate, Mockito.mock(PlatformTransactionManager.class),
+                chatProperties, new SimpleMeterRegistry());
+        writeBehind.start();
+
+        for (int i = 0; i < 3; i++) {
+            writeBehind.enqueue(chat("message " + i));
+        }
+        release.countDown();
+        writeBehind.stop();
+
+        ArgumentCaptor<List<Object[]>> batches = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(eq(ChatMessageWriteBehind.INSERT_SQL), batches.capture(), any(int[].class));
+        assertThat(batches.getAllValues().stream().mapToInt(List::size).sum()).isEqualTo(3);
+        assertThat(batches.getAllValues()).hasSizeGreaterThanOrEqualTo(2);
+    }
+}
@@ -4,10 +4,23 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.assertj.core.api.Assertions.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class ConnectedUsersServiceTest {
 
+    private static final String ROOM = ChatRooms.DEFAULT_ROOM;
+
     private ConnectedUsersService connectedUsersService;
 
     @BeforeEach
@@ -20,9 +33,9 @@ class ConnectedUsersServiceTest {
         String username = "testuser";
         String sessionId = "session1";
 
-        connectedUsersService.addUserSession(username, sessionId);
-        boolean isOnline = connectedUsersService.isUserOnline(username);
-        Set<String> users = connectedUsersService.getConnectedUsers();
+        connectedUsersService.addUserSession(ROOM, username, sessionId);
+        boolean isOnline = connectedUsersService.isUserOnline(ROOM, username);
+        Set<String> users = connectedUsersService.getConnectedUsers(ROOM);
 
         assertThat(isOnline).isTrue();
         assertThat(users).isNotNull().hasSize(1).containsExactly("testuser");
@@ -34,12 +47,12 @@ class ConnectedUsersServiceTest {
         String session1 = "session1";
         String session2 = "session2";
 
-        connectedUsersService.addUserSession(username, session1);
-        connectedUsersService.addUserSession(username, session2);
-        Set<String> users = connectedUsersService.getConnectedUsers();
+        connectedUsersService.addUserSession(ROOM, username, session1);
+        connectedUsersService.addUserSession(ROOM, username, session2);
+        Set<String> users = connectedUsersService.getConnectedUsers(ROOM);
 
         assertThat(users).isNotNull().hasSize(1).containsExactly("testuser");
-        assertThat(connectedUsersService.isUserOnline(username)).isTrue();
+        assertThat(connectedUsersService.isUserOnline(ROOM, username)).isTrue();
     }
 
     @Test
@@ -47,7 +60,7 @@ class ConnectedUsersServiceTest {
         String username = "user1";
         String sessionId = "sessionA";
 
-        boolean isFirstSession = connectedUsersService.addUserSession(username, sessionId);
+        boolean isFirstSession = connectedUsersService.addUserSession(ROOM, username, sessionId);
 
         assertThat(isFirstSession).isTrue();
     }
@@ -58,8 +71,8 @@ class ConnectedUsersServiceTest {
         String sessionA = "sessionA";
         String sessionB = "sessionB";
 
-        connectedUsersService.addUserSession(username, sessionA);
-        boolean isFirstForSessionB = connectedUsersService.addUserSession(username, sessionB);
+        connectedUsersService.addUserSession(ROOM, username, sessionA);
+        boolean isFirstForSessionB = connectedUsersService.addUserSession(ROOM, username, sessionB);
 
         assertThat(isFirstForSessionB).isFalse();
     }
@@ -69,12 +82,12 @@ class ConnectedUsersServiceTest {
     void whenUserSessionRemoved_AndItWasLastSession_UserShouldBeOffline() {
         String username = "testuser";
         String sessionId = "session1";
-        connectedUsersService.addUserSession(username, sessionId);
-        assertThat(connectedUsersService.isUserOnline(username)).isTrue();
+        connectedUsersService.addUserSession(ROOM, username, sessionId);
+        assertThat(connectedUsersService.isUserOnline(ROOM, username)).isTrue();
 
-        boolean wasLastSession = connectedUsersService.removeUserSession(username, sessionId);
-        boolean isOnline = connectedUsersService.isUserOnline(username);
-        Set<String> users = connectedUsersService.getConnectedUsers();
+        boolean wasLastSession = connectedUsersService.removeUserSession(ROOM, username, sessionId);
+        boolean isOnline = connectedUsersService.isUserOnline(ROOM, username);
+        Set<String> users = connectedUsersService.getConnectedUsers(ROOM);
 
         assertThat(wasLastSession).isTrue();
         assertThat(isOnline).isFalse();
@@ -86,13 +99,13 @@ class ConnectedUsersServiceTest {
         String username = "testuser";
         String session1 = "session1";
         String session2 = "session2";
-        connectedUsersService.addUserSession(username, session1);
-        connectedUsersService.addUserSession(username, session2);
-        assertThat(connectedUsersService.isUserOnline(username)).isTrue();
+        connectedUsersService.addUserSession(ROOM, username, session1);
+        connectedUsersService.addUserSession(ROOM, username, session2);
+        assertThat(connectedUsersService.isUserOnline(ROOM, username)).isTrue();
 
-        boolean wasLastSession = connectedUsersService.removeUserSession(username, session1);
-        boolean isOnline = connectedUsersService.isUserOnline(username);
-        Set<String> users = connectedUsersService.getConnectedUsers();
+        boolean wasLastSession = connectedUsersService.removeUserSession(ROOM, username, session1);
+        boolean isOnline = connectedUsersService.isUserOnline(ROOM, username);
+        Set<String> users = connectedUsersService.getConnectedUsers(ROOM);
 
         assertThat(wasLastSession).isFalse();
         assertThat(isOnline).isTrue();
@@ -103,12 +116,12 @@ class ConnectedUsersServiceTest {
     void removeUserSession_shouldReturnTrueWhenUserBecomesFullyOffline() {
         String username = "user1";
         String sessionId = "sessionA";
-        connectedUsersService.addUserSession(username, sessionId);
+        connectedUsersService.addUserSession(ROOM, username, sessionId);
 
-        boolean isFullyOffline = connectedUsersService.removeUserSession(username, sessionId);
+        boolean isFullyOffline = connectedUsersService.removeUserSession(ROOM, username, sessionId);
 
         assertThat(isFullyOffline).isTrue();
-        assertThat(connectedUsersService.isUserOnline(username)).isFalse();
+        assertThat(connectedUsersService.isUserOnline(ROOM, username)).isFalse();
     }
 
     @Test
@@ -116,40 +129,40 @@ class ConnectedUsersServiceTest {
         String username = "user1";
         String sessionA = "sessionA";
         String sessionB = "sessionB";
-        connectedUsersService.addUserSession(username, sessionA);
-        connectedUsersService.addUserSession(username, sessionB);
+        connectedUsersService.addUserSession(ROOM, username, sessionA);
+        connectedUsersService.addUserSession(ROOM, username, sessionB);
 
-        boolean isFullyOffline = connectedUsersService.removeUserSession(username, sessionA);
+        boolean isFullyOffline = connectedUsersService.removeUserSession(ROOM, username, sessionA);
 
         assertThat(isFullyOffline).isFalse();
-        assertThat(connectedUsersService.isUserOnline(username)).isTrue();
+        assertThat(connectedUsersService.isUserOnline(ROOM, username)).isTrue();
     }
 
 
     @Test
     void getConnectedUsers_shouldReturnCorrectUsernames() {
-        connectedUsersService.addUserSession("user1", "s1");
-        connectedUsersService.addUserSession("user2", "s2");
-        connectedUsersService.addUserSession("user1", "s3");
+        connectedUsersService.addUserSession(ROOM, "user1", "s1");
+        connectedUsersService.addUserSession(ROOM, "user2", "s2");
+        connectedUsersService.addUserSession(ROOM, "user1", "s3");
 
-        Set<String> users = connectedUsersService.getConnectedUsers();
+        Set<String> users = connectedUsersService.getConnectedUsers(ROOM);
 
         assertThat(users).isNotNull().hasSize(2).containsExactlyInAnyOrder("user1", "user2");
     }
 
     @Test
     void isUserOnline_shouldReturnFalseForNonExistentUser() {
-        connectedUsersService.addUserSession("user1", "s1");
+        connectedUsersService.addUserSession(ROOM, "user1", "s1");
 
-        assertThat(connectedUsersService.isUserOnline("nonexistentuser")).isFalse();
+        assertThat(connectedUsersService.isUserOnline(ROOM, "nonexistentuser")).isFalse();
     }
 
     @Test
     void addUserSession_withNullUsernameOrSessionId_shouldNotAddAndReturnFalse() {
-        boolean addedNullUser = connectedUsersService.addUserSession(null, "s1");
-        boolean addedNullSession = connectedUsersService.addUserSession("user1", null);
+        boolean addedNullUser = connectedUsersService.addUserSession(ROOM, null, "s1");
+        boolean addedNullSession = connectedUsersService.addUserSession(ROOM, "user1", null);
 
-        Set<String> users = connectedUsersService.getConnectedUsers();
+        Set<String> users = connectedUsersService.getConnectedUsers(ROOM);
 
         assertThat(addedNullUser).isFalse();
         assertThat(addedNullSession).isFalse();
@@ -158,18 +171,141 @@ class ConnectedUsersServiceTest {
 
     @Test
     void removeUserSession_withNullUsernameOrSessionId_orNonExistentUser_shouldDoNothingAndReturnFalse() {
-        connectedUsersService.addUserSession("user1", "s1");
+        connectedUsersService.addUserSession(ROOM, "user1", "s1");
 
-        boolean removedNullUser = connectedUsersService.removeUserSession(null, "s1");
-        boolean removedNullSession = connectedUsersService.removeUserSession("user1", null);
-        boolean removedNonExistentUser = connectedUsersService.removeUserSession("user2", "s2");
-        boolean removedNonExistentSession = connectedUsersService.removeUserSession("user1", "sNonExistent");
+        boolean removedNullUser = connectedUsersService.removeUserSession(ROOM, null, "s1");
+        boolean removedNullSession = connectedUsersService.removeUserSession(ROOM, "user1", null);
+        boolean removedNonExistentUser = connectedUsersService.removeUserSession(ROOM, "user2", "s2");
+        boolean removedNonExistentSession = connectedUsersService.removeUserSession(ROOM, "user1", "sNonExistent");
 
 
         assertThat(removedNullUser).isFalse();
         assertThat(removedNullSession).isFalse();
         assertThat(removedNonExistentUser).isFalse();
         assertThat(removedNonExistentSession).isFalse();
-        assertThat(connectedUsersService.getConnectedUsers()).hasSize(1).contains("user1");
+        assertThat(connectedUsersService.getConnectedUsers(ROOM)).hasSize(1).contains("user1");
+    }
+
+    @Test
+    void rooms_shouldTrackPresenceIndependently() {
+        assertThat(connectedUsersService.addUserSession(ROOM, "user1", "s1")).isTrue();
+        assertThat(connectedUsersService.addUserSession("lobby", "user1", "s1")).as("first session in another room").isTrue();
+        connectedUsersService.addUserSession("lobby", "user2", "s2");
+
+        assertThat(connectedUsersService.removeUserSession(ROOM, "user1", "s1")).isTrue();
+
+        assertThat(connectedUsersService.getConnectedUsers(ROOM)).isEmpty();
+        assertThat(connectedUsersService.isUserOnline("lobby", "user1")).isTrue();
+        assertThat(connectedUsersService.getRoomMembers()).isEqualTo(Map.of("lobby", Set.of("user1", "user2")));
+    }
+
+    @Test
+    void getConnectedUsers_shouldReturnSameSnapshotUntilRosterChanges() {
+        connectedUsersService.addUserSession(ROOM, "user1", "s1");
+        Set<String> first = connectedUsersService.getConnectedUsers(ROOM);
+
+        connectedUsersService.addUserSession(ROOM, "user1", "s2");
+        connectedUsersService.removeUserSession(ROOM, "user1", "s2");
+
+        assertThat(connectedUsersService.getConnectedUsers(ROOM)).isSameAs(first);
+        assertThatThrownBy(() -> first.add("intruder")).isInstanceOf(UnsupportedOperationException.class);
+
+        connectedUsersService.addUserSession(ROOM, "user2", "s3");
+        assertThat(connectedUsersService.getConnectedUsers(ROOM)).isNotSameAs(first).containsExactlyInAnyOrder("user1", "user2");
+    }
+
+    @Test
+    void concurrentJoinsAndLeaves_shouldReportMatchingFirstAndLastSessionTransitions() throws Exception {
+        int threads = 8;
+        int users = 4;
+        int iterations = 20_000;
+        Map<String, AtomicInteger> firstSessions = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> lastSessions = new ConcurrentHashMap<>();
+        for (int u = 0; u < users; u++) {
+            firstSessions.put("user" + u, new AtomicInteger());
+            lastSessions.put("user" + u, new AtomicInteger());
+        }
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < iterations; i++) {
+                        String username = "user" + random.nextInt(users);
+                        String sessionId = "t" + thread + "-" + i;
+                        if (connectedUsersService.addUserSession(ROOM, username, sessionId)) {
+                            firstSessions.get(username).incrementAndGet();
+                        }
+                        if (connectedUsersService.removeUserSession(ROOM, username, sessionId)) {
+                            lastSessions.get(username).incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (String username : firstSessions.keySet()) {
+            assertThat(firstSessions.get(username).get()).as(username).isPositive()
+                    .isEqualTo(lastSessions.get(username).get());
+            assertThat(connectedUsersService.isUserOnline(ROOM, username)).as(username).isFalse();
+        }
+        assertThat(connectedUsersService.getConnectedUsers(ROOM)).isEmpty();
+    }
+
+    @Test
+    void concurrentJoins_withLingeringSessions_shouldLeaveRosterMatchingSessions() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger firstSessions = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int u = 0; u < 500; u++) {
+                        if (connectedUsersService.addUserSession(ROOM, "user" + u, "t" + thread + "-u" + u)) {
+                            firstSessions.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(firstSessions.get()).isEqualTo(500);
+        assertThat(connectedUsersService.getConnectedUsers(ROOM)).hasSize(500);
+    }
+
+    @Test
+    void counts_shouldCountSessionsPerRoomAndUsersOnce() {
+        connectedUsersService.addUserSession(ROOM, "alice", "s1");
+        connectedUsersService.addUserSession(ROOM, "alice", "s2");
+        connectedUsersService.addUserSession("other", "alice", "s1");
+        connectedUsersService.addUserSession("other", "bob", "s3");
+
+        assertThat(connectedUsersService.getRoomSessionCount()).isEqualTo(4);
+        assertThat(connectedUsersService.getOnlineUserCount()).isEqualTo(2);
+        assertThat(connectedUsersService.getRoomCount()).isEqualTo(2);
+
+        connectedUsersService.removeUserSession("other", "bob", "s3");
+        connectedUsersService.removeUserSession("other", "alice", "s1");
+
+        assertThat(connectedUsersService.getRoomSessionCount()).isEqualTo(2);
+        assertThat(connectedUsersService.getOnlineUserCount()).isEqualTo(1);
+        assertThat(connectedUsersService.getRoomCount()).isEqualTo(1);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class JdbcPresenceStoreTest {
+
+    private static final String ROOM = ChatRooms.DEFAULT_ROOM;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private JdbcPresenceStore nodeOne;
+    private JdbcPresenceStore nodeTwo;
+
+    @BeforeEach
+    void setUp() {
+        nodeOne = storeForNode(1);
+        nodeTwo = storeForNode(2);
+        nodeOne.registerNode(Map.of());
+        nodeTwo.registerNode(Map.of());
+    }
+
+    private JdbcPresenceStore storeForNode(int nodeId) {
+        ChatProperties chatProperties = new ChatProperties();
+        chatProperties.getIds().setNodeId(nodeId);
+        return new JdbcPresenceStore(jdbcTemplate, transactionManager, chatProperties);
+    }
+
+    @Test
+    void apply_shouldOnlyReportRosterChangesAcrossAllNodes() {
+        Optional<PresenceUpdate> firstJoin = nodeOne.apply(ROOM, List.of("alice"), List.of());
+        Optional<PresenceUpdate> joinOnSecondNode = nodeTwo.apply(ROOM, List.of("alice"), List.of());
+        Optional<PresenceUpdate> leaveWhileStillOnSecondNode = nodeOne.apply(ROOM, List.of(), List.of("alice"));
+        Optional<PresenceUpdate> lastLeave = nodeTwo.apply(ROOM, List.of(), List.of("alice"));
+
+        assertThat(firstJoin).contains(new PresenceUpdate(ROOM, 1, List.of("alice"), List.of()));
+        assertThat(joinOnSecondNode).isEmpty();
+        assertThat(leaveWhileStillOnSecondNode).isEmpty();
+        assertThat(lastLeave).contains(new PresenceUpdate(ROOM, 2, List.of(), List.of("alice")));
+    }
+
+    @Test
+    void snapshot_shouldBeTheUnionOfLiveNodes() {
+        nodeOne.apply(ROOM, List.of("bob", "alice"), List.of());
+        nodeTwo.apply(ROOM, List.of("carol", "alice"), List.of());
+
+        PresenceSnapshot fromNodeOne = nodeOne.snapshot(ROOM);
+
+        assertThat(fromNodeOne.users()).containsExactly("alice", "bob", "carol");
+        assertThat(fromNodeOne).isEqualTo(nodeTwo.snapshot(ROOM));
+    }
+
+    @Test
+    void expireStaleNodes_shouldDropUsersOnlyOnTheDeadNode() {
+        nodeOne.apply(ROOM, List.of("alice"), List.of());
+        nodeTwo.apply(ROOM, List.of("alice", "bob"), List.of());
+        jdbcTemplate.update("UPDATE presence_nodes SET last_heartbeat = DATEADD('MINUTE', -5, LOCALTIMESTAMP) WHERE node_id = 2");
+
+        List<PresenceUpdate> expired = nodeOne.expireStaleNodes();
+
+        assertThat(expired).hasSize(1);
+        assertThat(expired.get(0).left()).containsExactly("bob");
+        assertThat(nodeOne.snapshot(ROOM).users()).containsExactly("alice");
+        assertThat(nodeTwo.heartbeat()).as("expired node must notice and re-register").isFalse();
+    }
+
+    @Test
+    void registerNode_shouldReplaceEntriesLeftBehindByAPreviousRun() {
+        nodeOne.apply(ROOM, List.of("alice", "bob"), List.of());
+
+        List<PresenceUpdate> restarted = storeForNode(1).registerNode(Map.of(ROOM, Set.of("bob")));
+
+        assertThat(restarted).hasSize(1);
+        assertThat(restarted.get(0).joined()).isEmpty();
+        assertThat(restarted.get(0).left()).containsExactly("alice");
+        assertThat(nodeOne.snapshot(ROOM).users()).containsExactly("bob");
+    }
+
+    @Test
+    void rooms_shouldHaveIndependentRostersAndVersions() {
+        Optional<PresenceUpdate> joinedPublic = nodeOne.apply(ROOM, List.of("alice"), List.of());
+        Optional<PresenceUpdate> joinedLobby = nodeTwo.apply("lobby", List.of("alice", "bob"), List.of());
+        Optional<PresenceUpdate> leftPublic = nodeOne.apply(ROOM, List.of(), List.of("alice"));
+
+        assertThat(joinedPublic).contains(new PresenceUpdate(ROOM, 1, List.of("alice"), List.of()));
+        assertThat(joinedLobby).contains(new PresenceUpdate("lobby", 1, List.of("alice", "bob"), List.of()));
+        assertThat(leftPublic).as("alice is only still online in another room").contains(new PresenceUpdate(ROOM, 2, List.of(), List.of("alice")));
+        assertThat(nodeOne.snapshot(ROOM).users()).isEmpty();
+        assertThat(nodeOne.snapshot("lobby").users()).containsExactly("alice", "bob");
+    }
+}
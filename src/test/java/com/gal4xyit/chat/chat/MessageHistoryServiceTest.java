@@ -0,0 +1,90 @@
+package com.gal4xyit.chat.chat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gal4xyit.chat.config.ChatProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Limit;
+
+import java.io.ByteArrayInputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+class MessageHistoryServiceTest {
+
+    private RecentMessageCache recentMessageCache;
+    private MessageHistoryService messageHistoryService;
+
+    @BeforeEach
+    void setUp() {
+        ChatMessageRepository chatMessageRepository = Mockito.mock(ChatMessageRepository.class);
+        when(chatMessageRepository.findViewsBefore(anyString(), anyLong(), any(Limit.class))).thenReturn(List.of(
+                new ChatMessageView(2L, "user2", "second", MessageType.CHAT, LocalDateTime.now()),
+                new ChatMessageView(1L, "user1", "first", MessageType.CHAT, LocalDateTime.now())));
+
+        recentMessageCache = new RecentMessageCache(chatMessageRepository, new ChatProperties(), new SimpleMeterRegistry());
+        recentMessageCache.afterSingletonsInstantiated();
+        messageHistoryService = new MessageHistoryService(chatMessageRepository, recentMessageCache,
+                new ObjectMapper().findAndRegisterModules(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void encodedPage_forLatestPage_shouldReuseSnapshotUntilANewMessageArrives() {
+        EncodedHistoryPage first = messageHistoryService.encodedPage(ChatRooms.DEFAULT_ROOM, null, 100);
+        EncodedHistoryPage second = messageHistoryService.encodedPage(ChatRooms.DEFAULT_ROOM, null, 100);
+
+        assertThat(second).isSameAs(first);
+
+        recentMessageCache.append(ChatMessage.builder().id(3L).sender("user3").content("third")
+                .type(MessageType.CHAT).timestamp(LocalDateTime.now()).build());
+        EncodedHistoryPage afterAppend = messageHistoryService.encodedPage(ChatRooms.DEFAULT_ROOM, null, 100);
+
+        assertThat(afterAppend).isNotSameAs(first);
+        assertThat(afterAppend.etag()).isNotEqualTo(first.etag());
+        assertThat(new String(afterAppend.json())).contains("third");
+    }
+
+    @Test
+    void encodedPage_forLatestPage_shouldCarryGzipOfTheSameJson() throws Exception {
+        EncodedHistoryPage page = messageHistoryService.encodedPage(ChatRooms.DEFAULT_ROOM, null, 100);
+
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(page.gzip()))) {
+            assertThat(gzip.readAllBytes()).isEqualTo(page.json());
+        }
+    }
+
+    @Test
+    void encodedPage_forLatestPage_shouldKeepOneSnapshotPerPageSize() {
+        EncodedHistoryPage small = messageHistoryService.encodedPage(ChatRooms.DEFAULT_ROOM, null, 1);
+        EncodedHistoryPage large = messageHistoryService.encodedPage(ChatRooms.DEFAULT_ROOM, null, 100);
+
+        assertThat(messageHistoryService.encodedPage(ChatRooms.DEFAULT_ROOM, null, 1)).isSameAs(small);
+        assertThat(messageHistoryService.encodedPage(ChatRooms.DEFAULT_ROOM, null, 100)).isSameAs(large);
+        assertThat(small.etag()).isNotEqualTo(large.etag());
+    }
+
+    @Test
+    void encodedPage_shouldGiveTheGzipVariantItsOwnStrongEtag() {
+        EncodedHistoryPage page = messageHistoryService.encodedPage(ChatRooms.DEFAULT_ROOM, null, 100);
+
+        assertThat(page.gzipEtag()).isNotEqualTo(page.etag()).startsWith(page.etag().substring(0, page.etag().length() - 1))
+                .endsWith("-gz\"");
+    }
+
+    @Test
+    void encodedPage_shouldUseStrongEtagTiedToNewestMessage() {
+        EncodedHistoryPage page = messageHistoryService.encodedPage(ChatRooms.DEFAULT_ROOM, null, 100);
+
+        assertThat(page.etag()).startsWith("\"h2-2-").endsWith("\"");
+        assertThat(messageHistoryService.encodedPage(ChatRooms.DEFAULT_ROOM, 2L, 100).etag()).startsWith("\"h1-1-");
+    }
+}
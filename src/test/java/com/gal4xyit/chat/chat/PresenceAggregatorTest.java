@@ -0,0 +1,138 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class PresenceAggregatorTest {
+
+    private static final String ROOM = ChatRooms.DEFAULT_ROOM;
+
+    private SimpMessagingTemplate messagingTemplate;
+    private PresenceEventLog presenceEventLog;
+    private ChatProperties chatProperties;
+    private SimpleMeterRegistry meterRegistry;
+    private PresenceAggregator presenceAggregator;
+
+    @BeforeEach
+    void setUp() {
+        messagingTemplate = Mockito.mock(SimpMessagingTemplate.class);
+        presenceEventLog = Mockito.mock(PresenceEventLog.class);
+        chatProperties = new ChatProperties();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (presenceAggregator != null && presenceAggregator.isRunning()) {
+            presenceAggregator.stop();
+        }
+    }
+
+    private void startAggregator(Duration debounceWindow) {
+        chatProperties.getPresence().setDebounceWindow(debounceWindow);
+        presenceAggregator = new PresenceAggregator(new PresencePublisher(messagingTemplate, new LocalPresenceStore()), presenceEventLog,
+                chatProperties, meterRegistry);
+        presenceAggregator.start();
+    }
+
+    private List<PresenceUpdate> publishedUpdates(int expected) {
+        ArgumentCaptor<PresenceUpdate> updates = ArgumentCaptor.forClass(PresenceUpdate.class);
+        verify(messagingTemplate, timeout(2000).times(expected))
+                .convertAndSend(eq(ChatRooms.presenceTopic(ROOM)), updates.capture());
+        return updates.getAllValues();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<PresenceEventView> loggedBatch() {
+        ArgumentCaptor<List<PresenceEventView>> batch = ArgumentCaptor.forClass(List.class);
+        verify(presenceEventLog, timeout(2000)).append(batch.capture());
+        return batch.getValue();
+    }
+
+    @Test
+    void transitionsWithinOneWindow_shouldBeMergedIntoOneUpdate() {
+        startAggregator(Duration.ofMillis(100));
+
+        presenceAggregator.userJoined(ROOM, "alice");
+        presenceAggregator.userJoined(ROOM, "bob");
+        presenceAggregator.userLeft(ROOM, "carol");
+
+        List<PresenceUpdate> updates = publishedUpdates(1);
+        assertThat(updates.get(0).joined()).containsExactly("alice", "bob");
+        assertThat(updates.get(0).left()).containsExactly("carol");
+        assertThat(loggedBatch()).extracting(PresenceEventView::username).containsExactly("alice", "bob", "carol");
+    }
+
+    @Test
+    void joinThenLeaveWithinOneWindow_shouldCancelOut() {
+        startAggregator(Duration.ofHours(1));
+
+        presenceAggregator.userJoined(ROOM, "alice");
+        presenceAggregator.userLeft(ROOM, "alice");
+        presenceAggregator.userJoined(ROOM, "bob");
+        presenceAggregator.flush();
+
+        List<PresenceUpdate> updates = publishedUpdates(1);
+        assertThat(updates.get(0).joined()).containsExactly("bob");
+        assertThat(updates.get(0).left()).isEmpty();
+        assertThat(meterRegistry.get("chat.presence.cancelled.transitions").counter().count()).isEqualTo(1);
+
+        List<PresenceEventView> events = loggedBatch();
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).username()).isEqualTo("bob");
+        assertThat(events.get(0).type()).isEqualTo(MessageType.JOIN);
+    }
+
+    @Test
+    void flush_whenEverythingCancelledOut_shouldPublishNothing() {
+        startAggregator(Duration.ofHours(1));
+
+        presenceAggregator.userLeft(ROOM, "alice");
+        presenceAggregator.userJoined(ROOM, "alice");
+        presenceAggregator.flush();
+
+        verify(messagingTemplate, never()).convertAndSend(eq(ChatRooms.presenceTopic(ROOM)), any(Object.class));
+        verify(presenceEventLog, never()).append(any());
+    }
+
+    @Test
+    void flush_shouldPublishOneUpdatePerRoomAndLogEventsWithTheRoom() {
+        startAggregator(Duration.ofHours(1));
+
+        presenceAggregator.userJoined(ROOM, "alice");
+        presenceAggregator.userJoined("lobby", "alice");
+        presenceAggregator.flush();
+
+        verify(messagingTemplate).convertAndSend(ChatRooms.presenceTopic(ROOM), new PresenceUpdate(ROOM, 1, List.of("alice"), List.of()));
+        verify(messagingTemplate).convertAndSend(ChatRooms.presenceTopic("lobby"), new PresenceUpdate("lobby", 1, List.of("alice"), List.of()));
+        assertThat(loggedBatch()).extracting(PresenceEventView::room).containsExactly(ROOM, "lobby");
+    }
+
+    @Test
+    void zeroWindow_shouldPublishEachTransitionImmediately() {
+        startAggregator(Duration.ZERO);
+
+        presenceAggregator.userJoined(ROOM, "alice");
+        presenceAggregator.userLeft(ROOM, "alice");
+
+        List<PresenceUpdate> updates = publishedUpdates(2);
+        assertThat(updates).extracting(PresenceUpdate::version).containsExactly(1L, 2L);
+    }
+}
@@ -0,0 +1,114 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class PresenceEventLogTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2026, 10, 18, 12, 0);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PresenceEventLog eventLog(JdbcTemplate jdbcTemplate, int queueCapacity) {
+        ChatProperties chatProperties = new ChatProperties();
+        chatProperties.getPresence().setEventLogQueueCapacity(queueCapacity);
+        return new PresenceEventLog(jdbcTemplate, chatProperties, meterRegistry);
+    }
+
+    private static PresenceEventView event(long id, String room, String username, MessageType type) {
+        return new PresenceEventView(id, room, username, type, NOW.plusSeconds(id));
+    }
+
+    @Test
+    // The writer thread commits on its own connection, so this test cannot rely on the rollback and cleans up itself.
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void append_whileRunning_shouldWriteEachFlushAsOneBatchInTheBackground() {
+        PresenceEventLog eventLog = eventLog(jdbcTemplate, 10);
+        eventLog.start();
+        try {
+            eventLog.append(List.of(event(1, "batch", "alice", MessageType.JOIN), event(2, "batch", "bob", MessageType.JOIN)));
+            eventLog.append(List.of(event(3, "batch", "alice", MessageType.LEAVE)));
+            eventLog.stop();
+
+            assertThat(eventLog.page("batch", null, 10).events())
+                    .extracting(PresenceEventView::id, PresenceEventView::username, PresenceEventView::type)
+                    .containsExactly(
+                            tuple(1L, "alice", MessageType.JOIN),
+                            tuple(2L, "bob", MessageType.JOIN),
+                            tuple(3L, "alice", MessageType.LEAVE));
+        } finally {
+            jdbcTemplate.update("DELETE FROM presence_events WHERE room = 'batch'");
+        }
+    }
+
+    @Test
+    void append_whenTheWriterIsBacklogged_shouldDropTheBatchAndCountIt() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        JdbcTemplate blockingTemplate = mock(JdbcTemplate.class);
+        when(blockingTemplate.batchUpdate(anyString(), anyList(), any(int[].class))).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new int[0];
+        });
+        PresenceEventLog eventLog = eventLog(blockingTemplate, 1);
+        eventLog.start();
+
+        eventLog.append(List.of(event(1, "lobby", "alice", MessageType.JOIN)));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        eventLog.append(List.of(event(2, "lobby", "bob", MessageType.JOIN)));
+        eventLog.append(List.of(event(3, "lobby", "carol", MessageType.JOIN)));
+        release.countDown();
+        eventLog.stop();
+
+        assertThat(meterRegistry.get("chat.presence.events.dropped.batches").counter().count()).isEqualTo(1);
+        verify(blockingTemplate, times(2)).batchUpdate(anyString(), anyList(), any(int[].class));
+    }
+
+    @Test
+    void page_shouldReturnOneRoomChronologicallyWithACursorToOlderEvents() {
+        PresenceEventLog eventLog = eventLog(jdbcTemplate, 10);
+        // Not started: each batch is written on the caller thread, inside the test transaction.
+        eventLog.append(List.of(
+                event(1, "lobby", "alice", MessageType.JOIN),
+                event(2, "other", "bob", MessageType.JOIN),
+                event(3, "lobby", "carol", MessageType.JOIN),
+                event(4, "lobby", "alice", MessageType.LEAVE)));
+
+        PresenceEventPage newest = eventLog.page("lobby", null, 2);
+        PresenceEventPage older = eventLog.page("lobby", Long.valueOf(newest.nextCursor()), 2);
+
+        assertThat(newest.events()).extracting(PresenceEventView::id).containsExactly(3L, 4L);
+        assertThat(newest.hasMore()).isTrue();
+        assertThat(newest.nextCursor()).isEqualTo("3");
+        assertThat(older.events()).extracting(PresenceEventView::id).containsExactly(1L);
+        assertThat(older.hasMore()).isFalse();
+    }
+}
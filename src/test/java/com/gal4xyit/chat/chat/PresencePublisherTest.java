@@ -0,0 +1,63 @@
+package com.gal4xyit.chat.chat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class PresencePublisherTest {
+
+    private static final String ROOM = ChatRooms.DEFAULT_ROOM;
+
+    private SimpMessagingTemplate messagingTemplate;
+    private PresencePublisher presencePublisher;
+
+    @BeforeEach
+    void setUp() {
+        messagingTemplate = Mockito.mock(SimpMessagingTemplate.class);
+        presencePublisher = new PresencePublisher(messagingTemplate, new LocalPresenceStore());
+    }
+
+    @Test
+    void publish_shouldSendOnlyTheDeltaWithIncreasingVersions() {
+        presencePublisher.publish(ROOM, List.of("alice"), List.of());
+        presencePublisher.publish(ROOM, List.of("bob"), List.of("alice"));
+
+        ArgumentCaptor<PresenceUpdate> updates = ArgumentCaptor.forClass(PresenceUpdate.class);
+        verify(messagingTemplate, times(2)).convertAndSend(eq(ChatRooms.presenceTopic(ROOM)), updates.capture());
+        assertThat(updates.getAllValues()).containsExactly(
+                new PresenceUpdate(ROOM, 1, List.of("alice"), List.of()),
+                new PresenceUpdate(ROOM, 2, List.of("bob"), List.of("alice")));
+    }
+
+    @Test
+    void snapshot_shouldReflectExactlyThePublishedDeltas() {
+        presencePublisher.publish(ROOM, List.of("carol", "alice"), List.of());
+        presencePublisher.publish(ROOM, List.of("bob"), List.of("carol"));
+
+        PresenceSnapshot snapshot = presencePublisher.snapshot(ROOM);
+
+        assertThat(snapshot.version()).isEqualTo(2);
+        assertThat(snapshot.users()).containsExactly("alice", "bob");
+        assertThat(presencePublisher.snapshot(ROOM)).isSameAs(snapshot);
+    }
+
+    @Test
+    void publish_shouldSendEachRoomToItsOwnTopicWithItsOwnVersions() {
+        presencePublisher.publish(ROOM, List.of("alice"), List.of());
+        presencePublisher.publish("lobby", List.of("bob"), List.of());
+
+        verify(messagingTemplate).convertAndSend("/topic/public.presence", new PresenceUpdate(ROOM, 1, List.of("alice"), List.of()));
+        verify(messagingTemplate).convertAndSend("/topic/lobby.presence", new PresenceUpdate("lobby", 1, List.of("bob"), List.of()));
+        assertThat(presencePublisher.snapshot("lobby").users()).containsExactly("bob");
+        assertThat(presencePublisher.snapshot("empty")).isEqualTo(new PresenceSnapshot("empty", 0, List.of()));
+    }
+}
@@ -0,0 +1,59 @@
+package com.gal4xyit.chat.chat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PresenceResyncSenderTest {
+
+    private MessageChannel clientOutboundChannel;
+    private PresenceResyncSender presenceResyncSender;
+
+    @BeforeEach
+    void setUp() {
+        clientOutboundChannel = Mockito.mock(MessageChannel.class);
+        when(clientOutboundChannel.send(any())).thenReturn(true);
+        PresencePublisher presencePublisher = new PresencePublisher(Mockito.mock(SimpMessagingTemplate.class), new LocalPresenceStore());
+        presencePublisher.publish("lobby", List.of("alice", "bob"), List.of());
+        presenceResyncSender = new PresenceResyncSender(presencePublisher, clientOutboundChannel, new MappingJackson2MessageConverter());
+    }
+
+    @Test
+    void resync_shouldSendTheRoomSnapshotToThatSubscriptionOnly() throws Exception {
+        presenceResyncSender.resync("s1", "sub-3", ChatRooms.presenceTopic("lobby"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<byte[]>> sent = ArgumentCaptor.forClass(Message.class);
+        verify(clientOutboundChannel).send(sent.capture());
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(sent.getValue());
+        assertThat(headers.getMessageType()).isEqualTo(SimpMessageType.MESSAGE);
+        assertThat(headers.getSessionId()).isEqualTo("s1");
+        assertThat(headers.getSubscriptionId()).isEqualTo("sub-3");
+        assertThat(headers.getDestination()).isEqualTo("/topic/lobby.presence");
+        assertThat(new ObjectMapper().readValue(sent.getValue().getPayload(), PresenceSnapshot.class))
+                .isEqualTo(new PresenceSnapshot("lobby", 1, List.of("alice", "bob")));
+    }
+
+    @Test
+    void resync_shouldIgnoreDestinationsThatAreNotPresenceTopics() {
+        presenceResyncSender.resync("s1", "sub-0", ChatRooms.messageTopic("lobby"));
+
+        verify(clientOutboundChannel, never()).send(any());
+    }
+}
@@ -0,0 +1,169 @@
+package com.gal4xyit.chat.chat;
+
+import com.gal4xyit.chat.config.ChatProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+class RecentMessageCacheTest {
+
+    private ChatMessageRepository chatMessageRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private ChatProperties chatProperties;
+
+    @BeforeEach
+    void setUp() {
+        chatMessageRepository = Mockito.mock(ChatMessageRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        chatProperties = new ChatProperties();
+        chatProperties.getHistory().setCacheCapacity(5);
+    }
+
+    private RecentMessageCache warmedCache(List<ChatMessageView> newestFirstInDatabase) {
+        when(chatMessageRepository.findViewsBefore(anyString(), anyLong(), any(Limit.class))).thenReturn(newestFirstInDatabase);
+        RecentMessageCache cache = new RecentMessageCache(chatMessageRepository, chatProperties, meterRegistry);
+        cache.afterSingletonsInstantiated();
+        return cache;
+    }
+
+    private static ChatMessageView view(long id) {
+        return new ChatMessageView(id, "user", "message " + id, MessageType.CHAT, LocalDateTime.now());
+    }
+
+    private static ChatMessage message(long id) {
+        return ChatMessage.builder().id(id).sender("user").content("message " + id).type(MessageType.CHAT)
+                .timestamp(LocalDateTime.now()).build();
+    }
+
+    private static List<ChatMessageView> newestFirst(long fromId, long toId) {
+        List<ChatMessageView> views = new ArrayList<>();
+        for (long id = toId; id >= fromId; id--) {
+            views.add(view(id));
+        }
+        return views;
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("chat.history.cache.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    void page_whenTableFitsInBuffer_shouldServeEveryCursorFromMemory() {
+        RecentMessageCache cache = warmedCache(newestFirst(1, 3));
+
+        Optional<MessageHistoryPage> latest = cache.page(ChatRooms.DEFAULT_ROOM, Long.MAX_VALUE, 10);
+        Optional<MessageHistoryPage> older = cache.page(ChatRooms.DEFAULT_ROOM, 2, 10);
+
+        assertThat(latest).isPresent();
+        assertThat(latest.get().messages()).extracting(ChatMessageView::id).containsExactly(1L, 2L, 3L);
+        assertThat(latest.get().hasMore()).isFalse();
+        assertThat(older).isPresent();
+        assertThat(older.get().messages()).extracting(ChatMessageView::id).containsExactly(1L);
+        assertThat(requests("hit")).isEqualTo(2);
+    }
+
+    @Test
+    void page_withBrokerRelay_shouldLeaveEveryPageToTheDatabase() {
+        chatProperties.getBroker().setRelayEnabled(true);
+        RecentMessageCache cache = warmedCache(newestFirst(1, 3));
+        cache.append(message(4));
+
+        assertThat(cache.page(ChatRooms.DEFAULT_ROOM, Long.MAX_VALUE, 10)).isEmpty();
+        assertThat(cache.version(ChatRooms.DEFAULT_ROOM)).isEqualTo(-1);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void page_withJdbcPresenceStore_shouldLeaveEveryPageToTheDatabase() {
+        chatProperties.getPresence().setStore(ChatProperties.Presence.Store.JDBC);
+        RecentMessageCache cache = warmedCache(newestFirst(1, 3));
+
+        assertThat(cache.page(ChatRooms.DEFAULT_ROOM, Long.MAX_VALUE, 10)).isEmpty();
+        assertThat(cache.version(ChatRooms.DEFAULT_ROOM)).isEqualTo(-1);
+    }
+
+    @Test
+    void append_shouldMakeNewMessagesVisibleAndEvictTheOldest() {
+        RecentMessageCache cache = warmedCache(newestFirst(1, 3));
+
+        for (long id = 4; id <= 7; id++) {
+            cache.append(message(id));
+        }
+
+        assertThat(cache.size()).isEqualTo(5);
+        Optional<MessageHistoryPage> page = cache.page(ChatRooms.DEFAULT_ROOM, Long.MAX_VALUE, 3);
+        assertThat(page).isPresent();
+        assertThat(page.get().messages()).extracting(ChatMessageView::id).containsExactly(5L, 6L, 7L);
+        assertThat(page.get().hasMore()).isTrue();
+        assertThat(page.get().nextCursor()).isEqualTo("5");
+    }
+
+    @Test
+    void page_whenCursorIsOlderThanTheBuffer_shouldMissSoCallerFallsBackToDatabase() {
+        RecentMessageCache cache = warmedCache(newestFirst(10, 14));
+
+        Optional<MessageHistoryPage> page = cache.page(ChatRooms.DEFAULT_ROOM, 12, 5);
+
+        assertThat(page).isEmpty();
+        assertThat(requests("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void page_shouldReturnMessagesInIdOrderEvenWhenAppendedOutOfOrder() {
+        RecentMessageCache cache = warmedCache(List.of());
+
+        cache.append(message(2));
+        cache.append(message(1));
+        cache.append(message(3));
+
+        assertThat(cache.page(ChatRooms.DEFAULT_ROOM, Long.MAX_VALUE, 10).orElseThrow().messages())
+                .extracting(ChatMessageView::id).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void page_shouldKeepEachRoomInItsOwnBuffer() {
+        RecentMessageCache cache = warmedCache(List.of());
+
+        cache.append(message(1));
+        cache.append(ChatMessage.builder().id(2L).room("lobby").sender("user").content("message 2")
+                .type(MessageType.CHAT).timestamp(LocalDateTime.now()).build());
+
+        assertThat(cache.page(ChatRooms.DEFAULT_ROOM, Long.MAX_VALUE, 10).orElseThrow().messages())
+                .extracting(ChatMessageView::id).containsExactly(1L);
+        assertThat(cache.page("lobby", Long.MAX_VALUE, 10).orElseThrow().messages())
+                .extracting(ChatMessageView::id).containsExactly(2L);
+        assertThat(meterRegistry.get("chat.history.cache.rooms").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void page_whenTooManyRoomsAreCached_shouldMissForNewRooms() {
+        chatProperties.getHistory().setCachedRooms(1);
+        RecentMessageCache cache = warmedCache(List.of());
+
+        assertThat(cache.page("lobby", Long.MAX_VALUE, 10)).isEmpty();
+        assertThat(cache.version("lobby")).isNegative();
+    }
+
+    @Test
+    void page_whenCacheDisabled_shouldAlwaysMiss() {
+        chatProperties.getHistory().setCacheCapacity(0);
+        RecentMessageCache cache = warmedCache(newestFirst(1, 3));
+
+        cache.append(message(4));
+
+        assertThat(cache.page(ChatRooms.DEFAULT_ROOM, Long.MAX_VALUE, 10)).isEmpty();
+    }
+}
@@ -0,0 +1,103 @@
+package com.gal4xyit.chat.chat;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void nextId_shouldEncodeNodeAndTimestamp() {
+        Instant now = Instant.parse("2026-05-01T12:00:00Z");
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(42, now::toEpochMilli);
+
+        long id = generator.nextId();
+
+        assertThat(SnowflakeIdGenerator.nodeOf(id)).isEqualTo(42);
+        assertThat(SnowflakeIdGenerator.timestampOf(id)).isEqualTo(now);
+    }
+
+    @Test
+    void firstIdAt_shouldBoundEveryIdGeneratedFromThatInstantOn() {
+        Instant monthStart = Instant.parse("2026-06-01T00:00:00Z");
+        long lastIdOfMay = new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID, () -> monthStart.toEpochMilli() - 1).nextId();
+        long firstIdOfJune = new SnowflakeIdGenerator(0, monthStart::toEpochMilli).nextId();
+
+        assertThat(SnowflakeIdGenerator.firstIdAt(monthStart)).isEqualTo(firstIdOfJune).isGreaterThan(lastIdOfMay);
+    }
+
+    @Test
+    void nextId_shouldIncreaseWithinTheSameMillisecondAndAcrossOverflow() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, () -> 1_800_000_000_000L);
+
+        long previous = generator.nextId();
+        for (int i = 0; i < 10_000; i++) {
+            long next = generator.nextId();
+            assertThat(next).isGreaterThan(previous);
+            previous = next;
+        }
+    }
+
+    @Test
+    void nextId_shouldStayMonotonicWhenClockStepsBack() {
+        AtomicLong clock = new AtomicLong(1_800_000_000_000L);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, clock::get);
+
+        long beforeStepBack = generator.nextId();
+        clock.addAndGet(-5_000);
+        long afterStepBack = generator.nextId();
+
+        assertThat(afterStepBack).isGreaterThan(beforeStepBack);
+    }
+
+    @Test
+    void nextId_shouldBeUniqueAcrossThreads() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        ids.add(generator.nextId());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(ids).hasSize(8 * 20_000);
+    }
+
+    @Test
+    void idsFromDifferentNodes_shouldNotCollide() {
+        SnowflakeIdGenerator nodeA = new SnowflakeIdGenerator(1, () -> 1_800_000_000_000L);
+        SnowflakeIdGenerator nodeB = new SnowflakeIdGenerator(2, () -> 1_800_000_000_000L);
+
+        assertThat(nodeA.nextId()).isNotEqualTo(nodeB.nextId());
+    }
+
+    @Test
+    void constructor_shouldRejectOutOfRangeNodeId() {
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(-1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
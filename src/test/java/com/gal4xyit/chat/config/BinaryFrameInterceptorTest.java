@@ -0,0 +1,116 @@
+package com.gal4xyit.chat.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinaryFrameInterceptorTest {
+
+    private static final byte[] JSON =
+            "{\"id\":\"42\",\"sender\":\"alice\",\"content\":\"hi\",\"type\":\"CHAT\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BinaryFrameInterceptor interceptor = new BinaryFrameInterceptor(meterRegistry);
+
+    @Test
+    void cborSubscriptionOnBinaryCapableSessionReceivesEquivalentCbor() throws Exception {
+        interceptor.preSend(subscribe("s1", "sub-0", true, true), null);
+
+        Message<?> out = interceptor.preSend(message("s1", "sub-0", JSON), null);
+
+        assertThat(StompHeaderAccessor.wrap(out).getContentType()).isEqualTo(BinaryFrameInterceptor.APPLICATION_CBOR);
+        JsonNode decoded = new CBORMapper().readTree((byte[]) out.getPayload());
+        assertThat(decoded).isEqualTo(new ObjectMapper().readTree(JSON));
+    }
+
+    @Test
+    void sameBroadcastPayloadIsTranscodedOnce() {
+        interceptor.preSend(subscribe("s1", "sub-0", true, true), null);
+        interceptor.preSend(subscribe("s2", "sub-0", true, true), null);
+
+        byte[] first = (byte[]) interceptor.preSend(message("s1", "sub-0", JSON), null).getPayload();
+        byte[] second = (byte[]) interceptor.preSend(message("s2", "sub-0", JSON), null).getPayload();
+
+        assertThat(second).isSameAs(first);
+        assertThat(meterRegistry.get("chat.stomp.cbor.frames").tag("result", "transcoded").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("chat.stomp.cbor.frames").tag("result", "reused").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void jsonSubscriptionsAndSockJsSessionsStayJson() {
+        interceptor.preSend(subscribe("s1", "sub-0", false, true), null);
+        interceptor.preSend(subscribe("s2", "sub-0", true, false), null);
+
+        Message<byte[]> json = message("s1", "sub-0", JSON);
+        Message<byte[]> sockJs = message("s2", "sub-0", JSON);
+
+        assertThat(interceptor.preSend(json, null)).isSameAs(json);
+        assertThat(interceptor.preSend(sockJs, null)).isSameAs(sockJs);
+    }
+
+    @Test
+    void unsubscribeStopsTranscoding() {
+        interceptor.preSend(subscribe("s1", "sub-0", true, true), null);
+        StompHeaderAccessor unsubscribe = StompHeaderAccessor.create(StompCommand.UNSUBSCRIBE);
+        unsubscribe.setSessionId("s1");
+        unsubscribe.setSubscriptionId("sub-0");
+        interceptor.preSend(MessageBuilder.createMessage(new byte[0], unsubscribe.getMessageHeaders()), null);
+
+        Message<byte[]> message = message("s1", "sub-0", JSON);
+
+        assertThat(interceptor.preSend(message, null)).isSameAs(message);
+    }
+
+    @Test
+    void decoratorDetectsCborContentTypeOnlyInHeaderBlock() {
+        byte[] cborFrame = "MESSAGE\ndestination:/topic/public\ncontent-type:application/cbor\n\n\u00a1"
+                .getBytes(StandardCharsets.ISO_8859_1);
+        byte[] jsonFrame = "MESSAGE\ncontent-type:application/json\n\n{\"content\":\"\\ncontent-type:application/cbor\\n\"}"
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] bodyMentionsCbor = "MESSAGE\ncontent-type:application/json\n\n\ncontent-type:application/cbor\n"
+                .getBytes(StandardCharsets.UTF_8);
+
+        assertThat(BinaryFrameSessionDecorator.hasCborBody(cborFrame)).isTrue();
+        assertThat(BinaryFrameSessionDecorator.hasCborBody(jsonFrame)).isFalse();
+        assertThat(BinaryFrameSessionDecorator.hasCborBody(bodyMentionsCbor)).isFalse();
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, boolean cbor, boolean binaryCapable) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination("/topic/public");
+        if (cbor) {
+            accessor.setContentType(BinaryFrameInterceptor.APPLICATION_CBOR);
+        }
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        if (binaryCapable) {
+            attributes.put(BinaryFrameInterceptor.BINARY_CAPABLE_ATTRIBUTE, Boolean.TRUE);
+        }
+        accessor.setSessionAttributes(attributes);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> message(String sessionId, String subscriptionId, byte[] payload) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination("/topic/public");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+}
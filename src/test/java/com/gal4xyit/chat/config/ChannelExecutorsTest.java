@@ -0,0 +1,81 @@
+package com.gal4xyit.chat.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChannelExecutorsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private double gauge(String name, String channel) {
+        return meterRegistry.get(name).tag("channel", channel).gauge().value();
+    }
+
+    @Test
+    void threadPool_shouldApplyLimitsAndReportQueueAndActiveThreads() throws Exception {
+        ChatProperties.Channels channels = new ChatProperties().getChannels();
+        channels.getInbound().setCorePoolSize(1);
+        channels.getInbound().setMaxPoolSize(1);
+        channels.getInbound().setQueueCapacity(1);
+        channels.getInbound().setRejectionPolicy(ChatProperties.ChannelExecutor.RejectionPolicy.ABORT);
+        ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) ChannelExecutors.create("inbound", channels, meterRegistry);
+        executor.initialize();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            executor.execute(() -> {
+                started.countDown();
+                awaitQuietly(release);
+            });
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            executor.execute(() -> { });
+
+            assertThat(gauge("chat.stomp.channel.active", "inbound")).isEqualTo(1);
+            assertThat(gauge("chat.stomp.channel.queue.size", "inbound")).isEqualTo(1);
+            assertThatThrownBy(() -> executor.execute(() -> { })).isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void virtualThreads_shouldRunTasksOnVirtualThreadsAndCountActiveTasks() throws Exception {
+        ChatProperties.Channels channels = new ChatProperties().getChannels();
+        channels.setVirtualThreads(true);
+        Executor executor = ChannelExecutors.create("outbound", channels, meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            CompletableFuture<Boolean> ranOnVirtualThread = new CompletableFuture<>();
+            executor.execute(() -> {
+                ranOnVirtualThread.complete(Thread.currentThread().isVirtual());
+                awaitQuietly(release);
+            });
+
+            assertThat(ranOnVirtualThread.get(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(gauge("chat.stomp.channel.active", "outbound")).isEqualTo(1);
+        } finally {
+            release.countDown();
+            ((SimpleAsyncTaskExecutor) executor).close();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
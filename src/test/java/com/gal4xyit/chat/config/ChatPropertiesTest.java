@@ -0,0 +1,63 @@
+package com.gal4xyit.chat.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.BindException;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+
+class ChatPropertiesTest {
+
+    private static ChatProperties bind(Map<String, String> properties) {
+        ChatProperties chatProperties = new ChatProperties();
+        new Binder(new MapConfigurationPropertySource(properties)).bind("chat", Bindable.ofInstance(chatProperties));
+        return chatProperties;
+    }
+
+    @Test
+    void nodeId_whenLeftEmptyOnASingleNode_shouldBeAccepted() {
+        // application.yml binds ${CHAT_NODE_ID:}, so an unset variable arrives as an empty string.
+        ChatProperties chatProperties = bind(Map.of("chat.ids.node-id", ""));
+
+        assertThat(chatProperties.getIds().getNodeId()).isNull();
+        assertThatNoException().isThrownBy(chatProperties::afterPropertiesSet);
+    }
+
+    @Test
+    void nodeId_whenUnsetWithTheBrokerRelayOrJdbcPresence_shouldFailStartup() {
+        ChatProperties relay = bind(Map.of("chat.ids.node-id", "", "chat.broker.relay-enabled", "true"));
+        ChatProperties jdbcPresence = bind(Map.of("chat.presence.store", "jdbc"));
+
+        assertThatIllegalStateException().isThrownBy(relay::afterPropertiesSet).withMessageContaining("CHAT_NODE_ID");
+        assertThatIllegalStateException().isThrownBy(jdbcPresence::afterPropertiesSet).withMessageContaining("CHAT_NODE_ID");
+    }
+
+    @Test
+    void nodeId_whenSetWithTheBrokerRelay_shouldBeAccepted() {
+        ChatProperties chatProperties = bind(Map.of("chat.ids.node-id", "7", "chat.broker.relay-enabled", "true"));
+
+        assertThat(chatProperties.getIds().getNodeId()).isEqualTo(7);
+        assertThatNoException().isThrownBy(chatProperties::afterPropertiesSet);
+    }
+
+    @Test
+    void nodeId_whenOutOfRange_shouldFailStartup() {
+        assertThatIllegalStateException().isThrownBy(bind(Map.of("chat.ids.node-id", "1024"))::afterPropertiesSet);
+        assertThatIllegalStateException().isThrownBy(bind(Map.of("chat.ids.node-id", "-1"))::afterPropertiesSet);
+    }
+
+    @Test
+    void rateLimitPerSecond_whenNotPositive_shouldFailBinding() {
+        assertThatExceptionOfType(BindException.class)
+                .isThrownBy(() -> bind(Map.of("chat.rate-limit.user.per-second", "0")));
+        assertThatExceptionOfType(BindException.class)
+                .isThrownBy(() -> bind(Map.of("chat.rate-limit.session.per-second", "-1")));
+    }
+}
@@ -0,0 +1,167 @@
+package com.gal4xyit.chat.config;
+
+import com.gal4xyit.chat.chat.SessionIdentity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RateLimitInterceptorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SimpMessageSendingOperations messagingTemplate = mock(SimpMessageSendingOperations.class);
+    private final AtomicLong clock = new AtomicLong();
+    private final ChatProperties.RateLimit properties = new ChatProperties.RateLimit();
+    private RateLimitInterceptor interceptor;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        properties.getSession().setBurst(2);
+        properties.getSession().setPerSecond(1);
+        properties.getUser().setBurst(3);
+        properties.getUser().setPerSecond(1);
+        ObjectProvider<SimpMessageSendingOperations> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(messagingTemplate);
+        interceptor = new RateLimitInterceptor(properties, provider, meterRegistry, clock::get);
+    }
+
+    @Test
+    void sessionBurstIsAllowedThenThrottledUntilRefill() {
+        Map<String, Object> attributes = attributesFor("alice");
+
+        assertThat(interceptor.preSend(send("s1", attributes), null)).isNotNull();
+        assertThat(interceptor.preSend(send("s1", attributes), null)).isNotNull();
+        assertThat(interceptor.preSend(send("s1", attributes), null)).isNull();
+
+        clock.addAndGet(1_000_000_000L);
+        assertThat(interceptor.preSend(send("s1", attributes), null)).isNotNull();
+        assertThat(meterRegistry.get("chat.ratelimit.throttled").tag("scope", "session").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void userLimitSpansSessions() {
+        Map<String, Object> first = attributesFor("alice");
+        Map<String, Object> second = attributesFor("alice");
+
+        assertThat(interceptor.preSend(send("s1", first), null)).isNotNull();
+        assertThat(interceptor.preSend(send("s1", first), null)).isNotNull();
+        assertThat(interceptor.preSend(send("s2", second), null)).isNotNull();
+        assertThat(interceptor.preSend(send("s2", second), null)).isNull();
+
+        assertThat(interceptor.preSend(send("s3", attributesFor("bob")), null)).isNotNull();
+        assertThat(meterRegistry.get("chat.ratelimit.throttled").tag("scope", "user").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void frameRefusedByTheUserBucketDoesNotCostASessionToken() {
+        Map<String, Object> first = attributesFor("alice");
+        Map<String, Object> second = attributesFor("alice");
+        interceptor.preSend(send("s1", first), null);
+        interceptor.preSend(send("s1", first), null);
+        assertThat(interceptor.preSend(send("s2", second), null)).isNotNull();
+
+        assertThat(interceptor.preSend(send("s2", second), null)).isNull();
+        assertThat(interceptor.preSend(send("s2", second), null)).isNull();
+
+        assertThat(meterRegistry.get("chat.ratelimit.throttled").tag("scope", "user").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("chat.ratelimit.throttled").tag("scope", "session").counter().count()).isZero();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rejectedFrameSendsErrorToTheOffendingSession() {
+        Map<String, Object> attributes = attributesFor("alice");
+        interceptor.preSend(send("s1", attributes), null);
+        interceptor.preSend(send("s1", attributes), null);
+        interceptor.preSend(send("s1", attributes), null);
+
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        ArgumentCaptor<Map<String, Object>> headers = ArgumentCaptor.forClass(Map.class);
+        verify(messagingTemplate).convertAndSendToUser(eq("alice"), eq(RateLimitInterceptor.ERROR_QUEUE),
+                payload.capture(), headers.capture());
+        RateLimitInterceptor.RateLimitError error = (RateLimitInterceptor.RateLimitError) payload.getValue();
+        assertThat(error.scope()).isEqualTo("session");
+        assertThat(error.destination()).isEqualTo("/app/chat.sendMessage/public");
+        assertThat(error.retryAfterMillis()).isEqualTo(1000);
+        assertThat(SimpMessageHeaderAccessor.getSessionId(new MessageHeaders(headers.getValue()))).isEqualTo("s1");
+    }
+
+    @Test
+    void otherDestinationsAreNotLimited() {
+        Map<String, Object> attributes = attributesFor("alice");
+        for (int i = 0; i < 10; i++) {
+            assertThat(interceptor.preSend(frame(StompCommand.SEND, "s1", "/app/chat.addUser/public", attributes), null)).isNotNull();
+        }
+        verify(messagingTemplate, never()).convertAndSendToUser(any(), any(), any(), any(Map.class));
+    }
+
+    @Test
+    void disconnectReleasesIdleBuckets() {
+        Map<String, Object> attributes = attributesFor("alice");
+        interceptor.preSend(send("s1", attributes), null);
+        assertThat(meterRegistry.get("chat.ratelimit.buckets").tag("scope", "user").gauge().value()).isEqualTo(1);
+
+        clock.addAndGet(5_000_000_000L);
+        interceptor.preSend(frame(StompCommand.DISCONNECT, "s1", null, attributes), null);
+
+        assertThat(meterRegistry.get("chat.ratelimit.buckets").tag("scope", "session").gauge().value()).isZero();
+        assertThat(meterRegistry.get("chat.ratelimit.buckets").tag("scope", "user").gauge().value()).isZero();
+    }
+
+    @Test
+    void periodicSweepDropsUserBucketsThatRefilledAfterTheirLastSession() {
+        Map<String, Object> attributes = attributesFor("alice");
+        interceptor.preSend(send("s1", attributes), null);
+        interceptor.preSend(send("s1", attributes), null);
+        interceptor.preSend(frame(StompCommand.DISCONNECT, "s1", null, attributes), null);
+        assertThat(meterRegistry.get("chat.ratelimit.buckets").tag("scope", "user").gauge().value()).isEqualTo(1);
+
+        clock.addAndGet(61_000_000_000L);
+        interceptor.preSend(send("s2", attributesFor("bob")), null);
+
+        // Only bob's bucket is left: alice's was swept once it had refilled.
+        assertThat(meterRegistry.get("chat.ratelimit.buckets").tag("scope", "user").gauge().value()).isEqualTo(1);
+    }
+
+    private static Map<String, Object> attributesFor(String username) {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        attributes.put(SessionIdentity.SESSION_ATTRIBUTE, new SessionIdentity(username, Set.of("USER")));
+        return attributes;
+    }
+
+    private static Message<byte[]> send(String sessionId, Map<String, Object> attributes) {
+        return frame(StompCommand.SEND, sessionId, "/app/chat.sendMessage/public", attributes);
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String sessionId, String destination, Map<String, Object> attributes) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId(sessionId);
+        accessor.setSessionAttributes(attributes);
+        if (destination != null) {
+            accessor.setDestination(destination);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,57 @@
+package com.gal4xyit.chat.config;
+
+import com.gal4xyit.chat.chat.SessionIdentity;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionIdentityInterceptorTest {
+
+    private final SessionIdentityInterceptor interceptor = new SessionIdentityInterceptor();
+
+    @Test
+    void connectStoresIdentityResolvedFromPrincipal() {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        interceptor.preSend(frame(StompCommand.CONNECT, attributes), null);
+
+        SessionIdentity identity = (SessionIdentity) attributes.get(SessionIdentity.SESSION_ATTRIBUTE);
+        assertThat(identity).isNotNull();
+        assertThat(identity.username()).isEqualTo("alice");
+        assertThat(identity.roles()).isEqualTo(Set.of("USER"));
+        assertThat(identity.hasRole("ADMIN")).isFalse();
+    }
+
+    @Test
+    void otherFramesLeaveSessionAttributesAlone() {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        interceptor.preSend(frame(StompCommand.SEND, attributes), null);
+
+        assertThat(attributes).doesNotContainKey(SessionIdentity.SESSION_ATTRIBUTE);
+    }
+
+    private static Message<byte[]> frame(StompCommand command, Map<String, Object> attributes) {
+        DefaultOAuth2User user = new DefaultOAuth2User(
+                List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("SCOPE_openid")),
+                Map.of("sub", "id-1", "preferred_username", "alice"),
+                "sub");
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId("s1");
+        accessor.setSessionAttributes(attributes);
+        accessor.setUser(new OAuth2AuthenticationToken(user, user.getAuthorities(), "keycloak"));
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
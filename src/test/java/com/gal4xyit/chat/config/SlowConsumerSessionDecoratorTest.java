@@ -0,0 +1,157 @@
+package com.gal4xyit.chat.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SlowConsumerSessionDecoratorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstSendStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseSocket = new CountDownLatch(1);
+    private final List<String> resyncs = new CopyOnWriteArrayList<>();
+    private WebSocketSession socket;
+    private SlowConsumerSessionDecorator.PresenceResync presenceResync = (sessionId, subscriptionId, destination) -> {
+    };
+
+    @BeforeEach
+    void setUp() throws Exception {
+        socket = Mockito.mock(WebSocketSession.class);
+        when(socket.getId()).thenReturn("s1");
+        // The first write hangs, like a client that stopped reading, until the test releases it.
+        doAnswer(invocation -> {
+            WebSocketMessage<?> message = invocation.getArgument(0);
+            firstSendStarted.countDown();
+            releaseSocket.await(5, TimeUnit.SECONDS);
+            sent.add((String) message.getPayload());
+            return null;
+        }).when(socket).sendMessage(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        releaseSocket.countDown();
+    }
+
+    private SlowConsumerSessionDecorator decorator(ChatProperties.Transport.SlowConsumerPolicy policy, int bufferSizeLimit) {
+        return new SlowConsumerSessionDecorator(socket, 60_000, bufferSizeLimit, policy,
+                SlowConsumerSessionDecorator.Counters.register(meterRegistry, policy),
+                (sessionId, subscriptionId, destination) -> presenceResync.resync(sessionId, subscriptionId, destination));
+    }
+
+    private static TextMessage frame(String destination, String body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:sub-0\n\n" + body + "\0");
+    }
+
+    private double counter(String name, ChatProperties.Transport.SlowConsumerPolicy policy) {
+        return meterRegistry.get(name).tag("policy", policy.name().toLowerCase()).counter().count();
+    }
+
+    @Test
+    void sendMessage_shouldNotBlockTheCallerWhileTheSocketIsSlow() throws Exception {
+        SlowConsumerSessionDecorator session = decorator(ChatProperties.Transport.SlowConsumerPolicy.DISCONNECT, 1 << 20);
+
+        session.sendMessage(frame("/topic/public", "one"));
+        assertThat(firstSendStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        session.sendMessage(frame("/topic/public", "two"));
+
+        assertThat(session.getBufferSize()).isPositive();
+        releaseSocket.countDown();
+        verify(socket, timeout(2000).times(2)).sendMessage(any());
+        assertThat(sent).hasSize(2);
+        assertThat(sent.get(0)).contains("one");
+        assertThat(sent.get(1)).contains("two");
+    }
+
+    @Test
+    void dropPresence_shouldDropOldestPresenceFramesButKeepChat() throws Exception {
+        ChatProperties.Transport.SlowConsumerPolicy policy = ChatProperties.Transport.SlowConsumerPolicy.DROP_PRESENCE;
+        TextMessage chat = frame("/topic/public", "hello");
+        TextMessage presence = frame("/topic/public.presence", "{\"version\":1}");
+        SlowConsumerSessionDecorator session = decorator(policy, chat.getPayloadLength() + presence.getPayloadLength());
+
+        session.sendMessage(frame("/topic/public", "in flight"));
+        assertThat(firstSendStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        session.sendMessage(presence);
+        session.sendMessage(chat);
+        session.sendMessage(frame("/topic/public.presence", "{\"version\":2}"));
+
+        assertThat(counter("chat.websocket.slow.consumer.dropped", policy)).isEqualTo(1);
+        releaseSocket.countDown();
+        verify(socket, timeout(2000).times(3)).sendMessage(any());
+        assertThat(sent).anyMatch(payload -> payload.contains("hello"));
+        assertThat(sent).noneMatch(payload -> payload.contains("\"version\":1"));
+        verify(socket, never()).close(any());
+    }
+
+    @Test
+    void disconnect_shouldCloseTheSessionOnceTheBufferOverflows() throws Exception {
+        ChatProperties.Transport.SlowConsumerPolicy policy = ChatProperties.Transport.SlowConsumerPolicy.DISCONNECT;
+        SlowConsumerSessionDecorator session = decorator(policy, 16);
+
+        session.sendMessage(frame("/topic/public", "in flight"));
+        assertThat(firstSendStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        session.sendMessage(frame("/topic/public", "overflow"));
+
+        verify(socket).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertThat(counter("chat.websocket.slow.consumer.disconnected", policy)).isEqualTo(1);
+    }
+
+    @Test
+    void snapshot_shouldSuppressPresenceAndPushTheRosterOnceTheClientCatchesUp() throws Exception {
+        ChatProperties.Transport.SlowConsumerPolicy policy = ChatProperties.Transport.SlowConsumerPolicy.SNAPSHOT;
+        TextMessage presence = frame("/topic/public.presence", "{\"version\":1}");
+        SlowConsumerSessionDecorator session = decorator(policy, presence.getPayloadLength());
+        presenceResync = (sessionId, subscriptionId, destination) -> {
+            resyncs.add(sessionId + " " + subscriptionId + " " + destination);
+            session.sendMessage(frame(destination, "{\"version\":3,\"users\":[\"alice\"]}"));
+        };
+
+        session.sendMessage(frame("/topic/public", "in flight"));
+        assertThat(firstSendStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        session.sendMessage(presence);
+        session.sendMessage(frame("/topic/public.presence", "{\"version\":2}"));
+        session.sendMessage(frame("/topic/public.presence", "{\"version\":3}"));
+
+        assertThat(counter("chat.websocket.slow.consumer.dropped", policy)).isEqualTo(3);
+        assertThat(resyncs).isEmpty();
+        releaseSocket.countDown();
+        verify(socket, timeout(2000).times(2)).sendMessage(any());
+        assertThat(sent.get(1)).contains("\"users\":[\"alice\"]");
+        assertThat(resyncs).containsExactly("s1 sub-0 /topic/public.presence");
+
+        session.sendMessage(frame("/topic/public.presence", "{\"version\":4}"));
+        verify(socket, timeout(2000).times(3)).sendMessage(any());
+        assertThat(sent.get(2)).contains("\"version\":4");
+        assertThat(resyncs).hasSize(1);
+    }
+
+    @Test
+    void isPresenceFrame_shouldMatchOnlyPresenceMessageFrames() {
+        assertThat(SlowConsumerSessionDecorator.isPresenceFrame(frame("/topic/public.presence", "{}"))).isTrue();
+        assertThat(SlowConsumerSessionDecorator.isPresenceFrame(frame("/topic/public", "{}"))).isFalse();
+        assertThat(SlowConsumerSessionDecorator.isPresenceFrame(frame("/topic/presence", "{}")))
+                .as("chat frames of a room named presence").isFalse();
+        assertThat(SlowConsumerSessionDecorator.isPresenceFrame(new TextMessage("CONNECTED\nversion:1.2\n\n\0"))).isFalse();
+    }
+}
@@ -0,0 +1,146 @@
+package com.gal4xyit.chat.controller;
+
+import com.gal4xyit.chat.chat.ChatMessageRepository;
+import com.gal4xyit.chat.chat.MessageIds;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.oidcLogin;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// Not @Transactional: the export reads on the async request thread, through its own connection and transaction.
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class AdminMessageExportControllerIntegrationTest {
+
+    // Legacy ids 1..3 are only bounded by timestamp; this one is also inside the id bounds of the February range.
+    private static final LocalDateTime SNOWFLAKE_TIMESTAMP = LocalDateTime.of(2026, 2, 15, 8, 0);
+    private static final long SNOWFLAKE_ID = MessageIds.firstIdAt(SNOWFLAKE_TIMESTAMP.atZone(ZoneId.systemDefault()).toInstant()) + 7;
+    private static final String INSERT_SQL = "INSERT INTO chat_messages (id, room, content, sender, recipient, type, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TestConfiguration
+    static class TestConfig {
+        @Bean
+        public ClientRegistrationRepository clientRegistrationRepository() {
+            return Mockito.mock(ClientRegistrationRepository.class);
+        }
+
+        @Bean
+        public JwtDecoder jwtDecoder() {
+            return Mockito.mock(JwtDecoder.class);
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        chatMessageRepository.deleteAllInBatch();
+        jdbcTemplate.update(INSERT_SQL, 1L, "public", "first", "alice", null, "CHAT", LocalDateTime.of(2026, 1, 10, 12, 0));
+        jdbcTemplate.update(INSERT_SQL, 2L, "public", "hello, \"bob\"", "alice", null, "CHAT", LocalDateTime.of(2026, 2, 10, 12, 0));
+        jdbcTemplate.update(INSERT_SQL, 3L, "@direct", "psst", "bob", "alice", "CHAT", LocalDateTime.of(2026, 3, 10, 12, 0));
+        jdbcTemplate.update(INSERT_SQL, SNOWFLAKE_ID, "public", "snowflake", "carol", null, "CHAT", SNOWFLAKE_TIMESTAMP);
+    }
+
+    @AfterEach
+    void tearDown() {
+        chatMessageRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void exportMessages_asNdjson_shouldStreamOneMessagePerLineInIdOrder() throws Exception {
+        MvcResult pending = mockMvc.perform(get("/api/admin/messages/export")
+                        .with(oidcLogin().authorities(new SimpleGrantedAuthority("ROLE_ADMIN"))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, containsString("chat-messages.ndjson")))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(4);
+        assertThat(lines[0]).contains("\"id\":\"1\"", "\"content\":\"first\"");
+        assertThat(lines[2]).contains("\"id\":\"3\"", "\"recipient\":\"alice\"");
+        assertThat(lines[3]).contains("\"id\":\"" + SNOWFLAKE_ID + "\"");
+    }
+
+    @Test
+    void exportMessages_asGzippedCsvWithinBounds_shouldOnlyContainMessagesOfThatRange() throws Exception {
+        MvcResult pending = mockMvc.perform(get("/api/admin/messages/export")
+                        .param("format", "CSV")
+                        .param("from", "2026-02-01T00:00:00")
+                        .param("to", "2026-03-01T00:00:00")
+                        .param("gzip", "true")
+                        .with(oidcLogin().authorities(new SimpleGrantedAuthority("ROLE_ADMIN"))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        byte[] gzipped = mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, containsString("chat-messages.csv.gz")))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(gunzip(gzipped)).isEqualTo(
+                "id,room,sender,recipient,type,timestamp,content\n"
+                        + "2,public,alice,,CHAT,2026-02-10T12:00,\"hello, \"\"bob\"\"\"\n"
+                        + SNOWFLAKE_ID + ",public,carol,,CHAT,2026-02-15T08:00,snowflake\n");
+    }
+
+    @Test
+    void exportMessages_withEmptyRange_shouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/admin/messages/export")
+                        .param("from", "2026-03-01T00:00:00")
+                        .param("to", "2026-02-01T00:00:00")
+                        .with(oidcLogin().authorities(new SimpleGrantedAuthority("ROLE_ADMIN"))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void exportMessages_asRegularUser_shouldBeForbidden() throws Exception {
+        mockMvc.perform(get("/api/admin/messages/export")
+                        .with(oidcLogin().authorities(new SimpleGrantedAuthority("ROLE_USER"))))
+                .andExpect(status().isForbidden());
+    }
+
+    private static String gunzip(byte[] gzipped) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
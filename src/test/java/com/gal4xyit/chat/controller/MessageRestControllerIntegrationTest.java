@@ -3,6 +3,8 @@ package com.gal4xyit.chat.controller;
 import com.gal4xyit.chat.chat.ChatMessage;
 import com.gal4xyit.chat.chat.ChatMessageRepository;
 import com.gal4xyit.chat.chat.MessageType;
+import com.gal4xyit.chat.chat.RecentMessageCache;
+import com.jayway.jsonpath.JsonPath;
 
 import org.mockito.Mockito;
 import org.springframework.boot.test.context.TestConfiguration;
@@ -51,6 +53,9 @@ public class MessageRestControllerIntegrationTest {
     @Autowired
     private ChatMessageRepository chatMessageRepository;
 
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
     @TestConfiguration
     static class TestConfig {
         @Bean
@@ -113,11 +118,13 @@ public class MessageRestControllerIntegrationTest {
     void setUp() {
         chatMessageRepository.deleteAllInBatch();
 
-        testUser = createMockOidcUser(testUsername, "fake-history-api-token", List.of("MEMBER"));
+        testUser = createMockOidcUser(testUsername, "fake-history-api-token", List.of("USER"));
 
-        chatMessageRepository.save(ChatMessage.builder().sender("user1").content("Oldest join").type(MessageType.JOIN).timestamp(LocalDateTime.now().minusMinutes(6)).build());
+        chatMessageRepository.save(ChatMessage.builder().sender("user1").content("Oldest hello").type(MessageType.CHAT).timestamp(LocalDateTime.now().minusMinutes(6)).build());
         chatMessageRepository.save(ChatMessage.builder().sender("user1").content("Hello from past").type(MessageType.CHAT).timestamp(LocalDateTime.now().minusMinutes(5)).build());
         chatMessageRepository.save(ChatMessage.builder().sender("user2").content("Hi there also from past").type(MessageType.CHAT).timestamp(LocalDateTime.now().minusMinutes(4)).build());
+        chatMessageRepository.flush();
+        recentMessageCache.reload();
     }
 
     @Test
@@ -126,27 +133,52 @@ public class MessageRestControllerIntegrationTest {
                         .with(oidcLogin().oidcUser(testUser)))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$", hasSize(3)))
-                .andExpect(jsonPath("$[0].content").value("Oldest join"))
-                .andExpect(jsonPath("$[0].sender").value("user1"))
-                .andExpect(jsonPath("$[0].type").value("JOIN"))
-                .andExpect(jsonPath("$[1].content").value("Hello from past"))
-                .andExpect(jsonPath("$[1].sender").value("user1"))
-                .andExpect(jsonPath("$[1].type").value("CHAT"))
-                .andExpect(jsonPath("$[2].content").value("Hi there also from past"))
-                .andExpect(jsonPath("$[2].sender").value("user2"))
-                .andExpect(jsonPath("$[2].type").value("CHAT"));
+                .andExpect(jsonPath("$.messages", hasSize(3)))
+                .andExpect(jsonPath("$.messages[0].content").value("Oldest hello"))
+                .andExpect(jsonPath("$.messages[0].sender").value("user1"))
+                .andExpect(jsonPath("$.messages[0].type").value("CHAT"))
+                .andExpect(jsonPath("$.messages[1].content").value("Hello from past"))
+                .andExpect(jsonPath("$.messages[1].sender").value("user1"))
+                .andExpect(jsonPath("$.messages[1].type").value("CHAT"))
+                .andExpect(jsonPath("$.messages[2].content").value("Hi there also from past"))
+                .andExpect(jsonPath("$.messages[2].sender").value("user2"))
+                .andExpect(jsonPath("$.messages[2].type").value("CHAT"))
+                .andExpect(jsonPath("$.hasMore").value(false));
+    }
+
+    @Test
+    void getMessageHistory_withCursor_shouldPageBackwardsThroughOlderMessages() throws Exception {
+        String firstPage = mockMvc.perform(get("/api/messages/history")
+                        .param("limit", "2")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(2)))
+                .andExpect(jsonPath("$.messages[0].content").value("Hello from past"))
+                .andExpect(jsonPath("$.messages[1].content").value("Hi there also from past"))
+                .andExpect(jsonPath("$.hasMore").value(true))
+                .andReturn().getResponse().getContentAsString();
+        String cursor = JsonPath.read(firstPage, "$.nextCursor");
+
+        mockMvc.perform(get("/api/messages/history")
+                        .param("before", cursor)
+                        .param("limit", "2")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(1)))
+                .andExpect(jsonPath("$.messages[0].content").value("Oldest hello"))
+                .andExpect(jsonPath("$.hasMore").value(false));
     }
 
     @Test
     void getMessageHistory_whenNoMessages_shouldReturnEmptyList() throws Exception {
         chatMessageRepository.deleteAllInBatch();
+        recentMessageCache.reload();
 
         mockMvc.perform(get("/api/messages/history")
                         .with(oidcLogin().oidcUser(testUser)))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$", hasSize(0)));
+                .andExpect(jsonPath("$.messages", hasSize(0)));
     }
 
     @Test
@@ -1,19 +1,34 @@
 package com.gal4xyit.chat.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.gal4xyit.chat.chat.ChatMessage;
 import com.gal4xyit.chat.chat.ChatMessageRepository;
+import com.gal4xyit.chat.chat.ChatMessageView;
+import com.gal4xyit.chat.chat.ChatRooms;
+import com.gal4xyit.chat.chat.MessageHistoryService;
+import com.gal4xyit.chat.chat.MessageSearchHit;
+import com.gal4xyit.chat.chat.MessageSearchPage;
+import com.gal4xyit.chat.chat.MessageSearchQuery;
+import com.gal4xyit.chat.chat.MessageSearchService;
+import com.gal4xyit.chat.chat.PresenceEventLog;
+import com.gal4xyit.chat.chat.PresenceEventPage;
+import com.gal4xyit.chat.chat.PresenceEventView;
+import com.gal4xyit.chat.chat.RecentMessageCache;
+import com.gal4xyit.chat.config.ChatProperties;
 import com.gal4xyit.chat.chat.MessageType;
 import com.gal4xyit.chat.config.SecurityConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
@@ -24,13 +39,20 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.oidcLogin;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -49,6 +71,12 @@ public class MessageRestControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private MessageSearchService messageSearchService;
+
+    @Autowired
+    private PresenceEventLog presenceEventLog;
+
     private DefaultOidcUser testUser;
 
     @TestConfiguration
@@ -58,6 +86,24 @@ public class MessageRestControllerTest {
             return Mockito.mock(ChatMessageRepository.class);
         }
 
+        @Bean
+        public MessageHistoryService messageHistoryService(ChatMessageRepository chatMessageRepository, ObjectMapper objectMapper) {
+            ChatProperties cacheDisabled = new ChatProperties();
+            cacheDisabled.getHistory().setCacheCapacity(0);
+            RecentMessageCache recentMessageCache = new RecentMessageCache(chatMessageRepository, cacheDisabled, new SimpleMeterRegistry());
+            return new MessageHistoryService(chatMessageRepository, recentMessageCache, objectMapper, new SimpleMeterRegistry());
+        }
+
+        @Bean
+        public MessageSearchService messageSearchService() {
+            return Mockito.mock(MessageSearchService.class);
+        }
+
+        @Bean
+        public PresenceEventLog presenceEventLog() {
+            return Mockito.mock(PresenceEventLog.class);
+        }
+
         @Bean
         public ClientRegistrationRepository clientRegistrationRepository() {
             return Mockito.mock(ClientRegistrationRepository.class);
@@ -72,6 +118,7 @@ public class MessageRestControllerTest {
 
     @BeforeEach
     void setUp() {
+        Mockito.reset(chatMessageRepository, messageSearchService, presenceEventLog);
         Map<String, Object> claims = new HashMap<>();
         claims.put("sub", "test-user-sub");
         claims.put("preferred_username", "testControllerUser");
@@ -81,31 +128,190 @@ public class MessageRestControllerTest {
 
     @Test
     void getMessageHistory_whenAuthenticatedAndMessagesExist_shouldReturnMessages() throws Exception {
-        ChatMessage msg1 = ChatMessage.builder().id(1L).sender("userA").content("Hello").type(MessageType.CHAT).timestamp(LocalDateTime.now().minusHours(1)).build();
-        ChatMessage msg2 = ChatMessage.builder().id(2L).sender("userB").content("Hi").type(MessageType.CHAT).timestamp(LocalDateTime.now().minusHours(2)).build();
+        ChatMessageView msg1 = new ChatMessageView(2L, "userA", "Hello", MessageType.CHAT, LocalDateTime.now().minusHours(1));
+        ChatMessageView msg2 = new ChatMessageView(1L, "userB", "Hi", MessageType.CHAT, LocalDateTime.now().minusHours(2));
+
+        when(this.chatMessageRepository.findViewsBefore(anyString(), anyLong(), any(Limit.class))).thenReturn(List.of(msg1, msg2));
+        mockMvc.perform(get("/api/messages/history")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.messages", hasSize(2)))
+                .andExpect(jsonPath("$.messages[0].content").value(msg2.content()))
+                .andExpect(jsonPath("$.messages[1].content").value(msg1.content()))
+                .andExpect(jsonPath("$.hasMore").value(false))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
 
+        verify(this.chatMessageRepository).findViewsBefore(ChatRooms.DEFAULT_ROOM, Long.MAX_VALUE, Limit.of(101));
+    }
 
-        List<ChatMessage> mockMessagesFromRepo = new ArrayList<>(List.of(msg1, msg2));
+    @Test
+    void getMessageHistory_withCursorAndLimit_shouldReturnOlderPageAndNextCursor() throws Exception {
+        ChatMessageView newest = new ChatMessageView(30L, "userA", "third", MessageType.CHAT, LocalDateTime.now().minusMinutes(1));
+        ChatMessageView middle = new ChatMessageView(20L, "userB", "second", MessageType.CHAT, LocalDateTime.now().minusMinutes(2));
+        ChatMessageView oldest = new ChatMessageView(10L, "userA", "first", MessageType.CHAT, LocalDateTime.now().minusMinutes(3));
 
-        when(this.chatMessageRepository.findTop100ByOrderByTimestampDesc()).thenReturn(mockMessagesFromRepo);
+        when(this.chatMessageRepository.findViewsBefore(eq(ChatRooms.DEFAULT_ROOM), eq(40L), eq(Limit.of(3)))).thenReturn(List.of(newest, middle, oldest));
         mockMvc.perform(get("/api/messages/history")
+                        .param("before", "40")
+                        .param("limit", "2")
                         .with(oidcLogin().oidcUser(testUser)))
                 .andExpect(status().isOk())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$", hasSize(2)))
-                .andExpect(jsonPath("$[0].content").value(msg2.getContent()))
-                .andExpect(jsonPath("$[1].content").value(msg1.getContent()));
+                .andExpect(jsonPath("$.messages", hasSize(2)))
+                .andExpect(jsonPath("$.messages[0].id").value("20"))
+                .andExpect(jsonPath("$.messages[1].id").value("30"))
+                .andExpect(jsonPath("$.hasMore").value(true))
+                .andExpect(jsonPath("$.nextCursor").value("20"));
+    }
+
+    @Test
+    void getMessageHistory_withRoom_shouldOnlyReadThatRoom() throws Exception {
+        ChatMessageView msg = new ChatMessageView(7L, "userA", "In the lobby", MessageType.CHAT, LocalDateTime.now());
+        when(this.chatMessageRepository.findViewsBefore(eq("lobby"), anyLong(), any(Limit.class))).thenReturn(List.of(msg));
+
+        mockMvc.perform(get("/api/messages/history")
+                        .param("room", "lobby")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(1)))
+                .andExpect(jsonPath("$.messages[0].content").value("In the lobby"));
+
+        verify(this.chatMessageRepository, never()).findViewsBefore(eq(ChatRooms.DEFAULT_ROOM), anyLong(), any(Limit.class));
+    }
+
+    @Test
+    void getMessageHistory_withInvalidRoom_shouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/messages/history")
+                        .param("room", "../Lobby")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void getDirectMessageHistory_shouldReadTheConversationOfTheCurrentUserWithThePeer() throws Exception {
+        ChatMessageView reply = new ChatMessageView(9L, "bob", "Hi back", MessageType.CHAT, LocalDateTime.now());
+        ChatMessageView opener = new ChatMessageView(8L, "testControllerUser", "Hi bob", MessageType.CHAT, LocalDateTime.now().minusMinutes(1));
+        when(this.chatMessageRepository.findDirectViewsBefore(eq("testControllerUser"), eq("bob"), eq(Long.MAX_VALUE), eq(101)))
+                .thenReturn(List.of(reply, opener));
+
+        mockMvc.perform(get("/api/messages/direct/bob/history")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(jsonPath("$.messages", hasSize(2)))
+                .andExpect(jsonPath("$.messages[0].content").value("Hi bob"))
+                .andExpect(jsonPath("$.messages[1].content").value("Hi back"));
     }
 
     @Test
     void getMessageHistory_whenAuthenticatedAndNoMessagesExist_shouldReturnEmptyList() throws Exception {
-        when(this.chatMessageRepository.findTop100ByOrderByTimestampDesc()).thenReturn(Collections.emptyList());
+        when(this.chatMessageRepository.findViewsBefore(anyString(), anyLong(), any(Limit.class))).thenReturn(Collections.emptyList());
 
         mockMvc.perform(get("/api/messages/history")
                         .with(oidcLogin().oidcUser(testUser)))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$", hasSize(0)));
+                .andExpect(jsonPath("$.messages", hasSize(0)))
+                .andExpect(jsonPath("$.hasMore").value(false));
+    }
+
+    @Test
+    void getMessageHistory_withMatchingIfNoneMatch_shouldReturnNotModified() throws Exception {
+        ChatMessageView msg = new ChatMessageView(5L, "userA", "Hello", MessageType.CHAT, LocalDateTime.now());
+        when(this.chatMessageRepository.findViewsBefore(anyString(), anyLong(), any(Limit.class))).thenReturn(List.of(msg));
+
+        String etag = mockMvc.perform(get("/api/messages/history")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("no-cache")))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/messages/history")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag)
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void getMessageHistory_whenHistoryChanged_shouldNotMatchOldEtag() throws Exception {
+        ChatMessageView first = new ChatMessageView(5L, "userA", "Hello", MessageType.CHAT, LocalDateTime.now());
+        ChatMessageView second = new ChatMessageView(6L, "userB", "Hi", MessageType.CHAT, LocalDateTime.now());
+        when(this.chatMessageRepository.findViewsBefore(anyString(), anyLong(), any(Limit.class))).thenReturn(List.of(first));
+
+        String etag = mockMvc.perform(get("/api/messages/history")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        when(this.chatMessageRepository.findViewsBefore(anyString(), anyLong(), any(Limit.class))).thenReturn(List.of(second, first));
+        mockMvc.perform(get("/api/messages/history")
+                        .header(HttpHeaders.IF_NONE_MATCH, etag)
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(2)));
+    }
+
+    @Test
+    void searchMessages_shouldSearchAsTheCurrentUserAndReturnRankedHits() throws Exception {
+        MessageSearchHit best = new MessageSearchHit(12L, "lobby", "userA", null, "deploy is done", MessageType.CHAT, LocalDateTime.now(), 0.2f);
+        MessageSearchHit next = new MessageSearchHit(11L, "lobby", "userB", null, "deploy started", MessageType.CHAT, LocalDateTime.now(), 0.1f);
+        when(messageSearchService.search(any(MessageSearchQuery.class)))
+                .thenReturn(MessageSearchPage.fromRanked(List.of(best, next), 1));
+
+        mockMvc.perform(get("/api/messages/search")
+                        .param("q", "deploy")
+                        .param("room", "lobby")
+                        .param("type", "CHAT")
+                        .param("from", "2024-01-01T00:00:00")
+                        .param("after", "0.5:40")
+                        .param("limit", "1")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.messages", hasSize(1)))
+                .andExpect(jsonPath("$.messages[0].id").value("12"))
+                .andExpect(jsonPath("$.messages[0].room").value("lobby"))
+                .andExpect(jsonPath("$.hasMore").value(true))
+                .andExpect(jsonPath("$.nextCursor").value("0.2:12"));
+
+        ArgumentCaptor<MessageSearchQuery> query = ArgumentCaptor.forClass(MessageSearchQuery.class);
+        verify(messageSearchService).search(query.capture());
+        assertThat(query.getValue()).isEqualTo(new MessageSearchQuery("testControllerUser", "deploy", "lobby", null,
+                MessageType.CHAT, LocalDateTime.of(2024, 1, 1, 0, 0), null, 0.5f, 40L, 1));
+    }
+
+    @Test
+    void searchMessages_withBlankQueryOrMalformedCursor_shouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/api/messages/search")
+                        .param("q", " ")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/messages/search")
+                        .param("q", "deploy")
+                        .param("after", "not-a-cursor")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isBadRequest());
+
+        verify(messageSearchService, never()).search(any(MessageSearchQuery.class));
+    }
+
+    @Test
+    void getPresenceEvents_shouldReturnThePresenceLogPage() throws Exception {
+        PresenceEventView joined = new PresenceEventView(21L, "lobby", "userA", MessageType.JOIN, LocalDateTime.now());
+        PresenceEventView left = new PresenceEventView(22L, "lobby", "userA", MessageType.LEAVE, LocalDateTime.now());
+        when(presenceEventLog.page("lobby", 30L, 2)).thenReturn(new PresenceEventPage(List.of(joined, left), "21", true));
+
+        mockMvc.perform(get("/api/messages/presence")
+                        .param("room", "lobby")
+                        .param("before", "30")
+                        .param("limit", "2")
+                        .with(oidcLogin().oidcUser(testUser)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.events", hasSize(2)))
+                .andExpect(jsonPath("$.events[0].id").value("21"))
+                .andExpect(jsonPath("$.events[0].type").value("JOIN"))
+                .andExpect(jsonPath("$.events[1].type").value("LEAVE"))
+                .andExpect(jsonPath("$.nextCursor").value("21"));
     }
 
     @Test